@@ -0,0 +1,114 @@
+package org.example;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Compara um resultado do JMH (-rf json) com a linha de base gravada e
+ * aponta o que ficou mais lento ou passou a alocar mais que a tolerância.
+ *
+ * Uso: {@code CompararResultados LINHA_DE_BASE.json RESULTADO.json [TOLERANCIA_%]}.
+ * Termina com código 1 se houver regressão. Sem linha de base, só explica
+ * como criá-la a partir do resultado atual.
+ */
+public class CompararResultados {
+
+    // O JMH 1.37 grava a métrica sem o "·" que as versões antigas punham na frente
+    private static final String[] ALOCACAO = {"gc.alloc.rate.norm", "·gc.alloc.rate.norm"};
+
+    private record Medida(String modo, String unidade, double valor, double erro, double bytesPorOp) { }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Uso: CompararResultados LINHA_DE_BASE.json RESULTADO.json [TOLERANCIA_%]");
+            System.exit(2);
+        }
+        Path base = Path.of(args[0]);
+        Path atual = Path.of(args[1]);
+        double tolerancia = args.length > 2 ? Double.parseDouble(args[2]) / 100 : 0.10;
+        if (!Files.exists(base)) {
+            System.out.println("Sem linha de base em " + base + ". Para usar este resultado como referência:");
+            System.out.println("  cp " + atual + " " + base);
+            return;
+        }
+
+        Map<String, Medida> antes = ler(base);
+        Map<String, Medida> depois = ler(atual);
+        int regressoes = 0;
+        for (Map.Entry<String, Medida> e : depois.entrySet()) {
+            Medida m = e.getValue();
+            Medida b = antes.get(e.getKey());
+            if (b == null || !b.unidade().equals(m.unidade())) {
+                System.out.printf("%-70s %12.3f %s (sem referência)%n", e.getKey(), m.valor(), m.unidade());
+                continue;
+            }
+            // Em vazão, maior é melhor; nos demais modos o valor é tempo
+            double variacao = m.modo().equals("thrpt")
+                    ? (b.valor() - m.valor()) / b.valor()
+                    : (m.valor() - b.valor()) / b.valor();
+            // Diferenças dentro da margem de erro das duas medidas não contam
+            boolean maisLento = variacao > tolerancia
+                    && Math.abs(m.valor() - b.valor()) > m.erro() + b.erro();
+            boolean alocaMais = b.bytesPorOp() >= 0 && m.bytesPorOp() >= 0
+                    && m.bytesPorOp() > b.bytesPorOp() * (1 + tolerancia) + 16;
+            String aviso = maisLento || alocaMais ? "  <-- REGRESSÃO" : "";
+            if (!aviso.isEmpty()) {
+                regressoes++;
+            }
+            System.out.printf("%-70s %12.3f -> %12.3f %s (%+.1f%%)%s%n", e.getKey(),
+                    b.valor(), m.valor(), m.unidade(), variacao * 100, aviso);
+            if (alocaMais) {
+                System.out.printf("%-70s %12.0f -> %12.0f B/op%n", "", b.bytesPorOp(), m.bytesPorOp());
+            }
+        }
+        if (regressoes > 0) {
+            System.out.printf("%d regressão(ões) acima de %.0f%%%n", regressoes, tolerancia * 100);
+            System.exit(1);
+        }
+        System.out.println("Nenhuma regressão acima de " + Math.round(tolerancia * 100) + "%");
+    }
+
+    // Chave: nome do benchmark mais os parâmetros, em ordem alfabética
+    private static Map<String, Medida> ler(Path arquivo) throws IOException {
+        Map<String, Medida> medidas = new LinkedHashMap<>();
+        try (Reader reader = Files.newBufferedReader(arquivo, StandardCharsets.UTF_8)) {
+            JsonArray resultados = JsonParser.parseReader(reader).getAsJsonArray();
+            for (JsonElement elemento : resultados) {
+                JsonObject r = elemento.getAsJsonObject();
+                StringBuilder chave = new StringBuilder(r.get("benchmark").getAsString()
+                        .replace("org.example.", ""));
+                if (r.has("params")) {
+                    Map<String, String> params = new TreeMap<>();
+                    r.getAsJsonObject("params").entrySet()
+                            .forEach(p -> params.put(p.getKey(), p.getValue().getAsString()));
+                    params.forEach((k, v) -> chave.append(' ').append(k).append('=').append(v));
+                }
+                JsonObject principal = r.getAsJsonObject("primaryMetric");
+                JsonElement erro = principal.get("scoreError");
+                double bytes = -1;
+                JsonObject secundarias = r.has("secondaryMetrics") ? r.getAsJsonObject("secondaryMetrics") : null;
+                for (String nome : ALOCACAO) {
+                    if (bytes < 0 && secundarias != null && secundarias.has(nome)) {
+                        bytes = secundarias.getAsJsonObject(nome).get("score").getAsDouble();
+                    }
+                }
+                medidas.put(chave.toString(), new Medida(r.get("mode").getAsString(),
+                        principal.get("scoreUnit").getAsString(), principal.get("score").getAsDouble(),
+                        erro == null || !erro.isJsonPrimitive() || Double.isNaN(erro.getAsDouble()) ? 0 : erro.getAsDouble(),
+                        bytes));
+            }
+        }
+        return medidas;
+    }
+}
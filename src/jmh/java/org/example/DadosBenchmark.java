@@ -0,0 +1,43 @@
+package org.example;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Listas de remédios geradas de forma determinística para os benchmarks,
+ * com nomes acentuados e dosagens e frequências repetidas como numa lista real.
+ */
+final class DadosBenchmark {
+
+    private static final String[] NOMES = {"Dipirona", "Paracetamol", "Ibuprofeno", "Losartana",
+            "Omeprazol", "Metformina", "Sinvastatina", "Amoxicilina", "Clonazepam", "Levotiroxina"};
+    private static final String[] DOSAGENS = {"1 comprimido", "2 comprimidos", "5ml", "10ml", "2 gotas"};
+    private static final String[] FREQUENCIAS = {"Diário", "12/12h", "8/8h", "Semanal", "Quando necessário"};
+
+    private DadosBenchmark() {
+    }
+
+    static List<Remedio> gerar(int quantidade) {
+        Random aleatorio = new Random(42);
+        List<Remedio> remedios = new ArrayList<>(quantidade);
+        for (int i = 0; i < quantidade; i++) {
+            Remedio r = new Remedio(NOMES[i % NOMES.length] + " " + i,
+                    i % 3 == 0 ? "Tomar após as refeições" : "",
+                    DOSAGENS[aleatorio.nextInt(DOSAGENS.length)],
+                    FREQUENCIAS[aleatorio.nextInt(FREQUENCIAS.length)]);
+            if (i % 4 == 0) {
+                r.setTomado(true);
+                r.setDataHoraTomado("01/01/2024 08:00");
+            }
+            remedios.add(r);
+        }
+        return remedios;
+    }
+
+    static RepositorioRemedios repositorio(int quantidade) {
+        RepositorioRemedios repositorio = new RepositorioRemedios();
+        repositorio.getRemedios().addAll(gerar(quantidade));
+        return repositorio;
+    }
+}
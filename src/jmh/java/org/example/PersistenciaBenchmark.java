@@ -0,0 +1,88 @@
+package org.example;
+
+import com.google.gson.Gson;
+import com.google.gson.stream.JsonWriter;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Carregar e salvar a lista inteira: o JSON pelo Gson (exportação, importação
+ * e o formato antigo do remedios.json) e o snapshot binário usado no dia a dia.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class PersistenciaBenchmark {
+
+    @Param({"1000", "100000", "1000000"})
+    int tamanho;
+
+    private final Gson gson = RemedioTypeAdapter.criarGson();
+    private List<Remedio> remedios;
+    private Path pasta, json, binario, saidaJson, saidaBinario;
+
+    @Setup(Level.Trial)
+    public void preparar() throws IOException {
+        remedios = DadosBenchmark.gerar(tamanho);
+        pasta = Files.createTempDirectory("remedios-jmh");
+        json = pasta.resolve("remedios.json");
+        binario = pasta.resolve("remedios.bin");
+        saidaJson = pasta.resolve("saida.json");
+        saidaBinario = pasta.resolve("saida.bin");
+        gravarJson(json);
+        SnapshotBinario.gravar(binario, 1, remedios);
+    }
+
+    @TearDown(Level.Trial)
+    public void limpar() throws IOException {
+        try (Stream<Path> arquivos = Files.walk(pasta)) {
+            for (Path p : arquivos.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(p);
+            }
+        }
+    }
+
+    private void gravarJson(Path destino) throws IOException {
+        try (Writer w = Files.newBufferedWriter(destino, StandardCharsets.UTF_8);
+             JsonWriter out = new JsonWriter(w)) {
+            gson.toJson(remedios, List.class, out);
+        }
+    }
+
+    @Benchmark
+    public int carregarJson() throws IOException {
+        int[] lidos = {0};
+        DiarioRemedios.lerSnapshot(json, r -> lidos[0]++);
+        return lidos[0];
+    }
+
+    @Benchmark
+    public void salvarJson() throws IOException {
+        gravarJson(saidaJson);
+    }
+
+    @Benchmark
+    public int carregarBinario() throws IOException {
+        int[] lidos = {0};
+        SnapshotBinario.ler(binario, r -> lidos[0]++);
+        return lidos[0];
+    }
+
+    // Inclui o fsync do snapshot, como no programa
+    @Benchmark
+    public void salvarBinario() throws IOException {
+        SnapshotBinario.gravar(saidaBinario, 1, remedios);
+    }
+}
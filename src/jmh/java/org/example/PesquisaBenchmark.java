@@ -0,0 +1,56 @@
+package org.example;
+
+import javafx.collections.transformation.FilteredList;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Campo de pesquisa: a consulta ao índice de trigramas e o mesmo resultado
+ * aplicado como predicado da FilteredList, como a tela faz a cada tecla.
+ *
+ * As consultas se alternam entre textos que não contêm um ao outro, para que
+ * o índice não reaproveite o resultado anterior e cada chamada seja uma pesquisa completa.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class PesquisaBenchmark {
+
+    private static final String[] CONSULTAS = {"dipirona 4", "refeições", "omepr", "zzz", "na 12"};
+
+    @Param({"1000", "100000", "1000000"})
+    int tamanho;
+
+    private IndicePesquisa indice;
+    private FilteredList<Remedio> filtrada;
+    private int proxima;
+
+    @Setup(Level.Trial)
+    public void preparar() {
+        RepositorioRemedios repositorio = DadosBenchmark.repositorio(tamanho);
+        indice = new IndicePesquisa(repositorio);
+        filtrada = new FilteredList<>(repositorio.getRemedios());
+    }
+
+    private String proximaConsulta() {
+        proxima = (proxima + 1) % CONSULTAS.length;
+        return CONSULTAS[proxima];
+    }
+
+    @Benchmark
+    public Set<Remedio> pesquisar() {
+        return indice.pesquisar(proximaConsulta());
+    }
+
+    @Benchmark
+    public int filtrarLista() {
+        Set<Remedio> encontrados = indice.pesquisar(proximaConsulta());
+        filtrada.setPredicate(encontrados::contains);
+        return filtrada.size();
+    }
+}
@@ -0,0 +1,51 @@
+package org.example;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/** Verificação de nome repetido ao adicionar e editar, e a inclusão em si. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class RepositorioBenchmark {
+
+    @Param({"1000", "100000", "1000000"})
+    int tamanho;
+
+    private RepositorioRemedios repositorio;
+    private String existente;
+    private Remedio primeiro;
+
+    @Setup(Level.Trial)
+    public void preparar() {
+        repositorio = DadosBenchmark.repositorio(tamanho);
+        primeiro = repositorio.getRemedios().get(0);
+        // Com outra caixa, como o usuário poderia digitar
+        existente = repositorio.getRemedios().get(tamanho / 2).getNome().toUpperCase();
+    }
+
+    @Benchmark
+    public boolean nomeExistente() {
+        return repositorio.existeNome(existente);
+    }
+
+    @Benchmark
+    public boolean nomeNovo() {
+        return repositorio.existeNome("Remédio que não existe");
+    }
+
+    @Benchmark
+    public boolean nomeDisponivelAoEditar() {
+        return repositorio.nomeDisponivel(primeiro.getNome(), primeiro);
+    }
+
+    @Benchmark
+    public Remedio adicionarERemover() {
+        repositorio.adicionar(new Remedio("Novo remédio", "", "1 comprimido", "Diário"));
+        return repositorio.remover(repositorio.getRemedios().size() - 1);
+    }
+}
@@ -0,0 +1,92 @@
+package org.example;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Contadores da tela (total, tomados, lista de tomados), que antes eram
+ * refeitos percorrendo a lista inteira, e as estatísticas de adesão.
+ *
+ * O histórico de doses tem 30 dias de doses para até 2000 remédios; os
+ * demais ficam sem doses, como remédios cadastrados e nunca marcados.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class ResumoBenchmark {
+
+    private static final int REMEDIOS_COM_DOSES = 2_000;
+
+    @Param({"1000", "100000", "1000000"})
+    int tamanho;
+
+    private Path pasta;
+    private List<Remedio> remedios;
+    private ResumoTomados resumoTomados;
+    private HistoricoDoses historico;
+    private EstatisticasAdesao estatisticas;
+    private int proximo;
+
+    @Setup(Level.Trial)
+    public void preparar() throws IOException {
+        RepositorioRemedios repositorio = DadosBenchmark.repositorio(tamanho);
+        remedios = repositorio.getRemedios();
+        resumoTomados = new ResumoTomados(repositorio);
+
+        pasta = Files.createTempDirectory("remedios-jmh");
+        historico = new HistoricoDoses(pasta.resolve(NucleoRemedios.ARQUIVO_DOSES), System.err::println);
+        historico.abrir();
+        int hoje = HistoricoDoses.minuto(LocalDate.now());
+        for (int i = 0; i < Math.min(tamanho, REMEDIOS_COM_DOSES); i++) {
+            long id = remedios.get(i).getId();
+            for (int dia = 29; dia >= 0; dia--) {
+                if ((i + dia) % 7 != 0) {
+                    historico.registrar(id, hoje - dia * 24 * 60 + 8 * 60);
+                }
+            }
+        }
+        estatisticas = new EstatisticasAdesao(repositorio, historico);
+        estatisticas.recalcular();
+    }
+
+    @TearDown(Level.Trial)
+    public void limpar() throws IOException {
+        historico.fechar();
+        try (Stream<Path> arquivos = Files.walk(pasta)) {
+            for (Path p : arquivos.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(p);
+            }
+        }
+    }
+
+    // Marcar ou desmarcar um remédio, com a atualização dos contadores e da lista de tomados
+    @Benchmark
+    public int alternarTomado() {
+        Remedio r = remedios.get(proximo);
+        proximo = (proximo + 1) % remedios.size();
+        r.setTomado(!r.isTomado());
+        return resumoTomados.getPendentes();
+    }
+
+    @Benchmark
+    public EstatisticasAdesao.Resumo resumoAdesao() {
+        return estatisticas.resumo();
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public void recalcularAdesao() throws IOException {
+        estatisticas.recalcular();
+    }
+}
@@ -0,0 +1,235 @@
+package org.example;
+
+import javafx.collections.ListChangeListener;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Calcula quando cada remédio deve ser tomado de novo e avisa quando a hora chega.
+ *
+ * A frequência em texto ("Diário", "12/12h", "Semanal"...) vira um intervalo
+ * fixo; a próxima dose é a última tomada mais esse intervalo. A última tomada
+ * é a marcada no remédio ou, se ele está desmarcado, a última do
+ * {@link HistoricoDoses}. Sem nenhuma dose (ou com o histórico ainda
+ * fechado), a primeira fica na próxima vez em que o relógio passa pelo
+ * horário inicial configurado. As doses ficam num conjunto ordenado por
+ * horário, então reagendar custa O(log n) e "o que vence até tal hora" é uma
+ * consulta de intervalo. Um único timer dispara na dose mais próxima.
+ */
+public class AgendadorDoses {
+
+    private static final long AGRUPAMENTO_MS = 1_000;
+    private static final Pattern INTERVALO_HORAS = Pattern.compile("(\\d+)\\s*/\\s*\\d+\\s*h");
+
+    /** Dose agendada; a ordem é pelo horário e, no empate, pelo id. */
+    public record Dose(long id, String nome, long vencimento) implements Comparable<Dose> {
+        @Override
+        public int compareTo(Dose outra) {
+            int c = Long.compare(vencimento, outra.vencimento);
+            return c != 0 ? c : Long.compare(id, outra.id);
+        }
+    }
+
+    private final ConcurrentSkipListSet<Dose> doses = new ConcurrentSkipListSet<>();
+    private final Map<Long, Dose> dosePorId = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "agendador-doses");
+        t.setDaemon(true);
+        return t;
+    });
+    private final Consumer<List<Dose>> aoVencer;
+    private final Executor executorAvisos;
+    private final RepositorioRemedios repositorio;
+    private final HistoricoDoses historico;
+    private final LocalTime primeiraDose;
+    private final ListChangeListener<Remedio> ouvinteLista = this::aoAlterarLista;
+    // Observações, dosagem e posição na tabela não mudam o horário
+    private final AlteracoesRemedios.Ouvinte ouvinteCampos = (r, campo, antes) -> {
+        if (campo != Remedio.Campo.OBSERVACOES && campo != Remedio.Campo.DOSAGEM
+                && campo != Remedio.Campo.ORDEM) {
+            reagendar(r);
+        }
+    };
+    private ScheduledFuture<?> proximoDisparo;
+    private long horarioDisparo = Long.MAX_VALUE;
+
+    /**
+     * @param historico consultado só depois de aberto; ao abri-lo, chame {@link #reagendarTodos()}
+     * @param primeiraDose horário da primeira dose de um remédio que nunca foi tomado
+     * @param aoVencer recebe as doses que venceram, sempre por meio de {@code executorAvisos}
+     */
+    public AgendadorDoses(RepositorioRemedios repositorio, HistoricoDoses historico, LocalTime primeiraDose,
+                          Executor executorAvisos, Consumer<List<Dose>> aoVencer) {
+        this.executorAvisos = executorAvisos;
+        this.aoVencer = aoVencer;
+        this.repositorio = repositorio;
+        this.historico = historico;
+        this.primeiraDose = primeiraDose;
+        repositorio.getRemedios().forEach(this::reagendar);
+        repositorio.getRemedios().addListener(ouvinteLista);
+        repositorio.getAlteracoes().adicionar(ouvinteCampos);
+    }
+
+    /** Intervalo entre doses para a frequência informada, ou {@code null} se não houver horário fixo. */
+    public static Duration intervalo(String frequencia) {
+        if (frequencia == null) {
+            return null;
+        }
+        String f = IndicePesquisa.normalizar(frequencia.strip());
+        switch (f) {
+            case "diario":
+                return Duration.ofDays(1);
+            case "semanal":
+                return Duration.ofDays(7);
+            default:
+                Matcher m = INTERVALO_HORAS.matcher(f);
+                if (m.matches() && Integer.parseInt(m.group(1)) > 0) {
+                    return Duration.ofHours(Integer.parseInt(m.group(1)));
+                }
+                return null;
+        }
+    }
+
+    /** Doses que vencem até o instante informado (em milissegundos), em ordem de horário. */
+    public List<Dose> vencendoAte(long limite) {
+        return new ArrayList<>(doses.headSet(new Dose(Long.MAX_VALUE, "", limite), true));
+    }
+
+    /** Refaz os horários de todos os remédios, depois que o histórico de doses é aberto; thread do JavaFX. */
+    public void reagendarTodos() {
+        repositorio.getRemedios().forEach(this::reagendar);
+    }
+
+    /** Para o timer e deixa de acompanhar a lista; chamar na thread do JavaFX. */
+    public void encerrar() {
+        repositorio.getRemedios().removeListener(ouvinteLista);
+        repositorio.getAlteracoes().remover(ouvinteCampos);
+        timer.shutdownNow();
+    }
+
+    // ---- Manutenção (thread do JavaFX) ----
+
+    private void aoAlterarLista(ListChangeListener.Change<? extends Remedio> c) {
+        while (c.next()) {
+            if (c.wasPermutated()) {
+                continue;
+            }
+            for (Remedio r : c.getRemoved()) {
+                desagendar(r.getId());
+            }
+            c.getAddedSubList().forEach(this::reagendar);
+        }
+    }
+
+    private void reagendar(Remedio r) {
+        Duration intervalo = intervalo(r.getFrequencia());
+        if (intervalo == null) {
+            desagendar(r.getId());
+            return;
+        }
+        LocalDateTime ultima = ultimaTomada(r);
+        long vencimento = ultima != null
+                ? ultima.plus(intervalo).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli()
+                : primeiroHorario();
+        Dose nova = new Dose(r.getId(), r.getNome(), vencimento);
+        Dose antiga = dosePorId.put(r.getId(), nova);
+        if (antiga != null) {
+            doses.remove(antiga);
+        }
+        doses.add(nova);
+        armar(vencimento);
+    }
+
+    private void desagendar(long id) {
+        Dose antiga = dosePorId.remove(id);
+        if (antiga != null) {
+            doses.remove(antiga);
+        }
+    }
+
+    // O próximo horário inicial: hoje, se ainda não passou, senão amanhã. O intervalo
+    // só conta a partir de uma dose tomada.
+    private long primeiroHorario() {
+        LocalDateTime agora = LocalDateTime.now();
+        LocalDateTime inicio = agora.toLocalDate().atTime(primeiraDose);
+        if (inicio.isBefore(agora)) {
+            inicio = inicio.plusDays(1);
+        }
+        return inicio.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    private LocalDateTime ultimaTomada(Remedio r) {
+        if (!r.isTomado()) {
+            return ultimaDoHistorico(r.getId());
+        }
+        try {
+            return LocalDateTime.parse(r.getDataHoraTomado(), Remedio.FORMATO_DATA_HORA);
+        } catch (DateTimeParseException | NullPointerException ex) {
+            // Acabou de ser marcado e o horário ainda não foi preenchido
+            return LocalDateTime.now();
+        }
+    }
+
+    private LocalDateTime ultimaDoHistorico(long id) {
+        if (!historico.isAberto()) {
+            return null;
+        }
+        try {
+            int minuto = historico.ultimaDose(id);
+            return minuto < 0 ? null
+                    : LocalDateTime.ofInstant(Instant.ofEpochSecond(minuto * 60L), ZoneId.systemDefault());
+        } catch (IOException ex) {
+            return null;
+        }
+    }
+
+    // ---- Timer ----
+
+    // Mantém um único disparo agendado, sempre para a dose mais próxima. Doses já vencidas
+    // esperam um pouco para que, num carregamento, saiam todas num único aviso.
+    private synchronized void armar(long vencimento) {
+        long agora = System.currentTimeMillis();
+        long disparo = Math.max(vencimento, agora + AGRUPAMENTO_MS);
+        if (disparo >= horarioDisparo) {
+            return;
+        }
+        if (proximoDisparo != null) {
+            proximoDisparo.cancel(false);
+        }
+        horarioDisparo = disparo;
+        proximoDisparo = timer.schedule(this::disparar, disparo - agora, TimeUnit.MILLISECONDS);
+    }
+
+    private void disparar() {
+        synchronized (this) {
+            horarioDisparo = Long.MAX_VALUE;
+            proximoDisparo = null;
+        }
+        List<Dose> vencidas = new ArrayList<>();
+        for (Dose d : vencendoAte(System.currentTimeMillis())) {
+            // Só avisa uma vez; a dose volta à fila quando o remédio for tomado de novo
+            if (doses.remove(d) && dosePorId.remove(d.id(), d)) {
+                vencidas.add(d);
+            }
+        }
+        Dose proxima = doses.ceiling(new Dose(Long.MIN_VALUE, "", Long.MIN_VALUE));
+        if (proxima != null) {
+            armar(proxima.vencimento());
+        }
+        if (!vencidas.isEmpty()) {
+            executorAvisos.execute(() -> aoVencer.accept(vencidas));
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package org.example;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Avisa as alterações de campo dos remédios de uma lista.
+ *
+ * Cada componente registra aqui um único ouvinte para a lista inteira, em
+ * vez de um listener em cada property de cada remédio; assim as properties
+ * do JavaFX só existem para os remédios que estão sendo exibidos.
+ * Os avisos chegam na thread que fez a alteração (normalmente a do JavaFX).
+ *
+ * Alterações feitas dentro de {@link #emLote} continuam sendo avisadas uma a
+ * uma, mas quem quiser pode acumulá-las enquanto {@link #isEmLote()} for
+ * verdadeiro e tratá-las de uma vez em {@link Ouvinte#loteConcluido()}.
+ */
+public class AlteracoesRemedios {
+
+    public interface Ouvinte {
+        /**
+         * @param antes valor anterior do campo ({@code Boolean} para {@link Remedio.Campo#TOMADO});
+         *              o novo valor pode ser lido do próprio remédio
+         */
+        void alterado(Remedio remedio, Remedio.Campo campo, Object antes);
+
+        /** Chamado ao fim do lote mais externo, depois de todas as alterações dele. */
+        default void loteConcluido() {
+        }
+    }
+
+    private final List<Ouvinte> ouvintes = new CopyOnWriteArrayList<>();
+    private int profundidadeLote;
+    // Alterações de campo avisadas no lote em andamento, para o diagnóstico
+    private int avisosLote;
+
+    public void adicionar(Ouvinte ouvinte) {
+        ouvintes.add(ouvinte);
+    }
+
+    public void remover(Ouvinte ouvinte) {
+        ouvintes.remove(ouvinte);
+    }
+
+    /**
+     * Executa as alterações como um lote. Lotes aninhados fazem parte do mais
+     * externo; os ouvintes são avisados do fim mesmo se as alterações falharem.
+     */
+    public void emLote(Runnable alteracoes) {
+        Diagnostico.AlteracaoLista evento = profundidadeLote == 0 ? new Diagnostico.AlteracaoLista("lote") : null;
+        profundidadeLote++;
+        try {
+            alteracoes.run();
+        } finally {
+            if (--profundidadeLote == 0) {
+                for (Ouvinte ouvinte : ouvintes) {
+                    ouvinte.loteConcluido();
+                }
+                evento.itens = avisosLote;
+                avisosLote = 0;
+                evento.concluir();
+            }
+        }
+    }
+
+    public boolean isEmLote() {
+        return profundidadeLote > 0;
+    }
+
+    void avisar(Remedio remedio, Remedio.Campo campo, Object antes) {
+        if (profundidadeLote > 0) {
+            avisosLote++;
+        }
+        for (Ouvinte ouvinte : ouvintes) {
+            ouvinte.alterado(remedio, campo, antes);
+        }
+    }
+}
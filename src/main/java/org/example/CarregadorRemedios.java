@@ -0,0 +1,134 @@
+package org.example;
+
+import javafx.application.Platform;
+import javafx.concurrent.Task;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+
+/**
+ * Lê um arquivo de remédios (snapshot binário ou JSON) fora da thread do JavaFX,
+ * entregando as linhas à tabela em blocos via {@link Platform#runLater}.
+ *
+ * O primeiro bloco é pequeno para que a primeira tela apareça logo; os
+ * seguintes crescem até {@link #BLOCO_MAXIMO} para não inundar a fila do JavaFX.
+ * O progresso é medido em bytes lidos do JSON, ou em remédios lidos do snapshot binário.
+ */
+public class CarregadorRemedios extends Task<Integer> {
+
+    private static final int BLOCO_INICIAL = 64;
+    private static final int BLOCO_MAXIMO = 4_096;
+
+    private final Path arquivo;
+    private final boolean renovarIds;
+    private final Consumer<List<Remedio>> publicar;
+
+    /**
+     * @param publicar recebe cada bloco na thread do JavaFX
+     * @param renovarIds dá ids novos aos remédios lidos (usado na importação)
+     */
+    public CarregadorRemedios(Path arquivo, boolean renovarIds, Consumer<List<Remedio>> publicar) {
+        this.arquivo = arquivo;
+        this.renovarIds = renovarIds;
+        this.publicar = publicar;
+    }
+
+    // Estado da leitura, usado apenas pela thread de fundo
+    private List<Remedio> bloco = new ArrayList<>(BLOCO_INICIAL);
+    private int limiteBloco = BLOCO_INICIAL;
+    private int total;
+
+    @Override
+    protected Integer call() throws IOException {
+        if (!Files.exists(arquivo)) {
+            return 0;
+        }
+        Diagnostico.Carga evento = new Diagnostico.Carga(arquivo);
+        evento.bytes = Files.size(arquivo);
+        SnapshotBinario.Cabecalho cabecalho = SnapshotBinario.lerCabecalho(arquivo);
+        if (cabecalho != null) {
+            SnapshotBinario.ler(arquivo, r -> receber(r, () -> total, cabecalho.quantidade()));
+            return concluir(cabecalho.quantidade(), evento);
+        }
+
+        long tamanho = evento.bytes;
+        try (ContadorBytes contador = new ContadorBytes(Files.newInputStream(arquivo));
+             Reader reader = new BufferedReader(new InputStreamReader(contador, StandardCharsets.UTF_8))) {
+            DiarioRemedios.lerSnapshot(reader, r -> receber(r, () -> contador.lidos, tamanho));
+        }
+        return concluir(tamanho, evento);
+    }
+
+    private void receber(Remedio r, LongSupplier lidos, long tamanho) {
+        if (isCancelled()) {
+            throw new CancellationException();
+        }
+        if (renovarIds) {
+            r.renovarId();
+        }
+        bloco.add(r);
+        total++;
+        if (bloco.size() >= limiteBloco) {
+            enviar(bloco);
+            limiteBloco = Math.min(limiteBloco * 4, BLOCO_MAXIMO);
+            bloco = new ArrayList<>(limiteBloco);
+            updateProgress(lidos.getAsLong(), tamanho);
+            updateMessage(total + " remédios lidos");
+        }
+    }
+
+    // A carga medida é a leitura; a entrega dos blocos à lista é medida à parte, na thread do JavaFX
+    private int concluir(long tamanho, Diagnostico.Carga evento) {
+        if (!bloco.isEmpty()) {
+            enviar(bloco);
+        }
+        updateProgress(tamanho, tamanho);
+        evento.remedios = total;
+        evento.concluir();
+        return total;
+    }
+
+    private void enviar(List<Remedio> bloco) {
+        Platform.runLater(() -> {
+            if (!isCancelled()) {
+                Diagnostico.AlteracaoLista evento = new Diagnostico.AlteracaoLista("carga");
+                publicar.accept(bloco);
+                evento.itens = bloco.size();
+                evento.concluir();
+            }
+        });
+    }
+
+    private static class ContadorBytes extends FilterInputStream {
+        private volatile long lidos;
+
+        ContadorBytes(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                lidos++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                lidos += n;
+            }
+            return n;
+        }
+    }
+}
@@ -0,0 +1,404 @@
+package org.example;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.regex.Pattern;
+
+/**
+ * Catálogo de medicamentos (um registro nacional em CSV, por exemplo) para
+ * completar o nome enquanto se digita e sugerir as dosagens de cada produto.
+ *
+ * O CSV é compilado uma vez ({@link #compilar}) num índice binário ordenado
+ * pelo nome normalizado (sem acentos e maiúsculas), que é mapeado em memória
+ * por {@link #abrir}. Uma consulta por prefixo é uma busca binária na tabela
+ * de posições e uma leitura sequencial a partir dali; só os produtos
+ * devolvidos viram objetos, então o catálogo não ocupa o heap.
+ * As dosagens se repetem muito e vão para um dicionário, como no
+ * {@link SnapshotBinario}.
+ *
+ * <pre>
+ * cabeçalho: int MAGICO, short VERSAO, short reservado, int quantidade,
+ *            int formas, long inicioTabelas, long reservado
+ * dados:     formas × texto, depois quantidade × produto, em ordem de chave
+ * produto:   texto chave, texto nome, byte n, n × short forma
+ * texto:     short bytes UTF-8, bytes
+ * tabelas:   int[formas] posições, int[quantidade] posições
+ * </pre>
+ */
+public final class CatalogoRemedios {
+
+    private static final int MAGICO = 0x52434154; // "RCAT"
+    private static final short VERSAO = 1;
+    private static final int TAMANHO_CABECALHO = 32;
+    private static final int MAXIMO_TEXTO = 1_000;
+    private static final int MAXIMO_FORMAS = 0xFFFF;
+    private static final Pattern ESPACOS = Pattern.compile("\\s+");
+
+    /** Um produto do catálogo e as dosagens (formas e concentrações) registradas para ele. */
+    public record Produto(String nome, List<String> formas) { }
+
+    private final MappedByteBuffer mapa;
+    private final int quantidade;
+    private final int inicioProdutos;
+    private final String[] formas;
+
+    private CatalogoRemedios(MappedByteBuffer mapa) throws IOException {
+        this.mapa = mapa;
+        if (mapa.capacity() < TAMANHO_CABECALHO || mapa.getInt(0) != MAGICO) {
+            throw new IOException("não é um índice de catálogo");
+        }
+        if (mapa.getShort(4) > VERSAO) {
+            throw new IOException("índice de catálogo gravado por uma versão mais nova do programa");
+        }
+        this.quantidade = mapa.getInt(8);
+        this.formas = new String[mapa.getInt(12)];
+        long tabelas = mapa.getLong(16);
+        if (tabelas + 4L * (formas.length + quantidade) != mapa.capacity()) {
+            throw new IOException("índice de catálogo truncado");
+        }
+        this.inicioProdutos = (int) tabelas + 4 * formas.length;
+        for (int i = 0; i < formas.length; i++) {
+            formas[i] = texto(mapa.getInt((int) tabelas + 4 * i));
+        }
+    }
+
+    /** Mapeia um índice gravado por {@link #compilar}; só as dosagens são lidas agora. */
+    public static CatalogoRemedios abrir(Path indice) throws IOException {
+        try (FileChannel canal = FileChannel.open(indice, StandardOpenOption.READ)) {
+            if (canal.size() > Integer.MAX_VALUE) {
+                throw new IOException("índice de catálogo grande demais: " + indice);
+            }
+            // O mapeamento continua válido depois que o canal é fechado
+            return new CatalogoRemedios(canal.map(FileChannel.MapMode.READ_ONLY, 0, canal.size()));
+        } catch (IndexOutOfBoundsException ex) {
+            throw new IOException("índice de catálogo corrompido: " + indice, ex);
+        }
+    }
+
+    /**
+     * Abre o índice, compilando-o antes se o CSV existe e é mais novo que ele.
+     * Devolve {@code null} se não há nenhum dos dois.
+     */
+    public static CatalogoRemedios abrirOuCompilar(Path csv, Path indice) throws IOException {
+        if (Files.exists(csv) && (!Files.exists(indice)
+                || Files.getLastModifiedTime(csv).compareTo(Files.getLastModifiedTime(indice)) > 0)) {
+            compilar(csv, indice);
+        }
+        return Files.exists(indice) ? abrir(indice) : null;
+    }
+
+    public int getQuantidade() {
+        return quantidade;
+    }
+
+    /** Até {@code limite} produtos cujo nome começa com o prefixo, ignorando maiúsculas e acentos. */
+    public List<Produto> sugerir(String prefixo, int limite) {
+        byte[] procurado = chave(prefixo).getBytes(StandardCharsets.UTF_8);
+        List<Produto> encontrados = new ArrayList<>(Math.min(limite, 16));
+        for (int i = primeiroMaiorOuIgual(procurado); i < quantidade && encontrados.size() < limite; i++) {
+            int pos = posicaoProduto(i);
+            if (!comecaCom(pos, procurado)) {
+                break;
+            }
+            encontrados.add(produto(pos));
+        }
+        return encontrados;
+    }
+
+    /** O produto com exatamente este nome (ignorando maiúsculas e acentos), ou {@code null}. */
+    public Produto procurar(String nome) {
+        byte[] procurado = chave(nome).getBytes(StandardCharsets.UTF_8);
+        int i = primeiroMaiorOuIgual(procurado);
+        if (i < quantidade) {
+            int pos = posicaoProduto(i);
+            if (mapa.getShort(pos) == procurado.length && comecaCom(pos, procurado)) {
+                return produto(pos);
+            }
+        }
+        return null;
+    }
+
+    private static String chave(String nome) {
+        return ESPACOS.matcher(IndicePesquisa.normalizar(nome).strip()).replaceAll(" ");
+    }
+
+    private int posicaoProduto(int i) {
+        return mapa.getInt(inicioProdutos + 4 * i);
+    }
+
+    private int primeiroMaiorOuIgual(byte[] procurado) {
+        int de = 0, ate = quantidade;
+        while (de < ate) {
+            int meio = (de + ate) >>> 1;
+            if (comparar(posicaoProduto(meio), procurado) < 0) {
+                de = meio + 1;
+            } else {
+                ate = meio;
+            }
+        }
+        return de;
+    }
+
+    // Compara a chave do produto com os bytes, sem sinal, como na ordenação da compilação
+    private int comparar(int pos, byte[] procurado) {
+        int tamanho = Short.toUnsignedInt(mapa.getShort(pos));
+        int n = Math.min(tamanho, procurado.length);
+        for (int i = 0; i < n; i++) {
+            int c = Byte.compareUnsigned(mapa.get(pos + 2 + i), procurado[i]);
+            if (c != 0) {
+                return c;
+            }
+        }
+        return Integer.compare(tamanho, procurado.length);
+    }
+
+    private boolean comecaCom(int pos, byte[] prefixo) {
+        if (Short.toUnsignedInt(mapa.getShort(pos)) < prefixo.length) {
+            return false;
+        }
+        for (int i = 0; i < prefixo.length; i++) {
+            if (mapa.get(pos + 2 + i) != prefixo[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private Produto produto(int pos) {
+        pos += 2 + Short.toUnsignedInt(mapa.getShort(pos));
+        String nome = texto(pos);
+        pos += 2 + Short.toUnsignedInt(mapa.getShort(pos));
+        int n = Byte.toUnsignedInt(mapa.get(pos++));
+        List<String> dosagens = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            dosagens.add(formas[Short.toUnsignedInt(mapa.getShort(pos + 2 * i))]);
+        }
+        return new Produto(nome, List.copyOf(dosagens));
+    }
+
+    // Leituras absolutas: o mapa pode ser consultado por várias threads
+    private String texto(int pos) {
+        byte[] bytes = new byte[Short.toUnsignedInt(mapa.getShort(pos))];
+        mapa.get(pos + 2, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // ---- Compilação ----
+
+    /**
+     * Compila o CSV no índice (substituindo-o). Cada linha é uma apresentação:
+     * o nome do produto e, opcionalmente, a dosagem. As colunas são as de
+     * cabeçalho com "nome", "produto" ou "medicamento" e com "dosag", "forma",
+     * "apresenta" ou "concentra"; sem cabeçalho, as duas primeiras. O separador
+     * é ";" ou ",", o que aparecer mais na primeira linha, e a codificação é
+     * UTF-8 ou, se o arquivo não for UTF-8 válido, ISO-8859-1.
+     * Linhas do mesmo produto são juntadas.
+     */
+    public static void compilar(Path csv, Path indice) throws IOException {
+        Diagnostico.Gravacao evento = new Diagnostico.Gravacao("catálogo");
+        Map<String, Entrada> porChave;
+        try {
+            porChave = lerCsv(csv, StandardCharsets.UTF_8);
+        } catch (CharacterCodingException ex) {
+            porChave = lerCsv(csv, StandardCharsets.ISO_8859_1);
+        }
+        List<Entrada> entradas = new ArrayList<>(porChave.values());
+        entradas.sort((a, b) -> Arrays.compareUnsigned(a.chave, b.chave));
+
+        Map<String, Integer> indiceForma = new HashMap<>();
+        List<String> dicionario = new ArrayList<>();
+        for (Entrada e : entradas) {
+            for (String forma : e.formas) {
+                if (!indiceForma.containsKey(forma) && dicionario.size() < MAXIMO_FORMAS) {
+                    indiceForma.put(forma, dicionario.size());
+                    dicionario.add(forma);
+                }
+            }
+        }
+
+        Path temporario = Path.of(indice + ".tmp");
+        int[] posicoesFormas = new int[dicionario.size()];
+        int[] posicoesProdutos = new int[entradas.size()];
+        long tabelas;
+        try (DataOutputStream saida = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(temporario), 1 << 16))) {
+            saida.write(new byte[TAMANHO_CABECALHO]);
+            for (int i = 0; i < dicionario.size(); i++) {
+                posicoesFormas[i] = saida.size();
+                escreverTexto(saida, dicionario.get(i).getBytes(StandardCharsets.UTF_8));
+            }
+            for (int i = 0; i < entradas.size(); i++) {
+                Entrada e = entradas.get(i);
+                posicoesProdutos[i] = saida.size();
+                escreverTexto(saida, e.chave);
+                escreverTexto(saida, e.nome.getBytes(StandardCharsets.UTF_8));
+                List<Integer> formas = new ArrayList<>();
+                for (String forma : e.formas) {
+                    Integer f = indiceForma.get(forma);
+                    if (f != null && formas.size() < 255) {
+                        formas.add(f);
+                    }
+                }
+                saida.writeByte(formas.size());
+                for (int f : formas) {
+                    saida.writeShort(f);
+                }
+                // DataOutputStream.size() satura em Integer.MAX_VALUE
+                if (saida.size() == Integer.MAX_VALUE) {
+                    throw new IOException("catálogo grande demais: " + csv);
+                }
+            }
+            tabelas = saida.size();
+            for (int p : posicoesFormas) {
+                saida.writeInt(p);
+            }
+            for (int p : posicoesProdutos) {
+                saida.writeInt(p);
+            }
+        } catch (IOException | RuntimeException ex) {
+            Files.deleteIfExists(temporario);
+            throw ex;
+        }
+
+        ByteBuffer cabecalho = ByteBuffer.allocate(TAMANHO_CABECALHO);
+        cabecalho.putInt(MAGICO).putShort(VERSAO).putShort((short) 0)
+                .putInt(entradas.size()).putInt(dicionario.size()).putLong(tabelas).flip();
+        try (FileChannel canal = FileChannel.open(temporario, StandardOpenOption.WRITE)) {
+            canal.write(cabecalho, 0);
+            canal.force(true);
+        }
+        Files.move(temporario, indice, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        evento.bytes = Files.size(indice);
+        evento.concluir();
+    }
+
+    private static void escreverTexto(DataOutputStream saida, byte[] bytes) throws IOException {
+        saida.writeShort(bytes.length);
+        saida.write(bytes);
+    }
+
+    // Um produto durante a compilação; o nome exibido é o da primeira linha
+    private static final class Entrada {
+        final byte[] chave;
+        final String nome;
+        final Set<String> formas = new LinkedHashSet<>();
+
+        Entrada(String chave, String nome) {
+            this.chave = chave.getBytes(StandardCharsets.UTF_8);
+            this.nome = nome;
+        }
+    }
+
+    private static Map<String, Entrada> lerCsv(Path csv, Charset codificacao) throws IOException {
+        Map<String, Entrada> porChave = new HashMap<>();
+        try (BufferedReader leitor = Files.newBufferedReader(csv, codificacao)) {
+            String linha = leitor.readLine();
+            if (linha == null) {
+                return porChave;
+            }
+            if (!linha.isEmpty() && linha.charAt(0) == '\uFEFF') {
+                linha = linha.substring(1);
+            }
+            char separador = contar(linha, ';') >= contar(linha, ',') ? ';' : ',';
+            List<String> campos = campos(linha, separador);
+            int colunaNome = coluna(campos, "nome", "produto", "medicamento");
+            int colunaForma = coluna(campos, "dosag", "forma", "apresenta", "concentra");
+            if (colunaNome < 0) {
+                // Sem cabeçalho: a primeira linha já é um produto
+                colunaNome = 0;
+                colunaForma = 1;
+                incluir(porChave, campos, colunaNome, colunaForma);
+            }
+            while ((linha = leitor.readLine()) != null) {
+                incluir(porChave, campos(linha, separador), colunaNome, colunaForma);
+            }
+        }
+        return porChave;
+    }
+
+    private static void incluir(Map<String, Entrada> porChave, List<String> campos, int colunaNome, int colunaForma) {
+        if (colunaNome >= campos.size()) {
+            return;
+        }
+        String nome = limitar(campos.get(colunaNome).strip());
+        String chave = chave(nome);
+        if (chave.isEmpty()) {
+            return;
+        }
+        Entrada e = porChave.computeIfAbsent(chave, k -> new Entrada(k, nome));
+        if (colunaForma >= 0 && colunaForma < campos.size()) {
+            String forma = limitar(campos.get(colunaForma).strip());
+            if (!forma.isEmpty()) {
+                e.formas.add(forma);
+            }
+        }
+    }
+
+    private static String limitar(String texto) {
+        return texto.length() > MAXIMO_TEXTO ? texto.substring(0, MAXIMO_TEXTO) : texto;
+    }
+
+    private static int coluna(List<String> cabecalho, String... nomes) {
+        for (int i = 0; i < cabecalho.size(); i++) {
+            String c = IndicePesquisa.normalizar(cabecalho.get(i));
+            for (String nome : nomes) {
+                if (c.contains(nome)) {
+                    return i;
+                }
+            }
+        }
+        return -1;
+    }
+
+    private static int contar(String linha, char c) {
+        int n = 0;
+        for (int i = 0; i < linha.length(); i++) {
+            if (linha.charAt(i) == c) {
+                n++;
+            }
+        }
+        return n;
+    }
+
+    // Campos entre aspas podem conter o separador; "" dentro deles é uma aspa
+    private static List<String> campos(String linha, char separador) {
+        List<String> campos = new ArrayList<>();
+        StringBuilder atual = new StringBuilder();
+        boolean entreAspas = false;
+        for (int i = 0; i < linha.length(); i++) {
+            char c = linha.charAt(i);
+            if (entreAspas) {
+                if (c == '"' && i + 1 < linha.length() && linha.charAt(i + 1) == '"') {
+                    atual.append('"');
+                    i++;
+                } else if (c == '"') {
+                    entreAspas = false;
+                } else {
+                    atual.append(c);
+                }
+            } else if (c == '"') {
+                entreAspas = true;
+            } else if (c == separador) {
+                campos.add(atual.toString());
+                atual.setLength(0);
+            } else {
+                atual.append(c);
+            }
+        }
+        campos.add(atual.toString());
+        return campos;
+    }
+}
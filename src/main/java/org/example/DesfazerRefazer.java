@@ -0,0 +1,401 @@
+package org.example;
+
+import javafx.collections.ListChangeListener;
+import javafx.collections.ObservableList;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Histórico de desfazer/refazer de uma lista de remédios.
+ *
+ * Acompanha a lista e o {@link AlteracoesRemedios} dela, então toda
+ * alteração entra no histórico, venha de onde vier. Cada passo guarda só o
+ * que mudou: para um campo, o valor anterior e o novo; para a lista, o
+ * trecho afetado e os remédios que estavam nele. A lista de removidos de uma
+ * alteração já é uma cópia feita pelo JavaFX e é guardada sem copiar de
+ * novo, por isso uma importação que substitui a lista inteira custa O(1)
+ * para registrar.
+ *
+ * Alterações seguidas no mesmo remédio, em pouco tempo, viram um só passo;
+ * um lote ({@link AlteracoesRemedios#emLote}) ou um grupo ({@link #iniciarGrupo})
+ * também. Os passos mais antigos são descartados quando a estimativa de
+ * memória passa do limite; o mais recente sempre fica.
+ *
+ * Deve ser usado na thread da lista.
+ */
+public class DesfazerRefazer {
+
+    private static final long JANELA_MESCLA_MS = 2_000;
+    // Heap aproximado de um remédio que só o histórico ainda segura
+    private static final long BYTES_POR_REMEDIO = 160;
+
+    private final ObservableList<Remedio> remedios;
+    private final AlteracoesRemedios alteracoes;
+    private final long limiteBytes;
+    private final Deque<Passo> feitos = new ArrayDeque<>();
+    private final Deque<Passo> desfeitos = new ArrayDeque<>();
+    private long bytes;
+
+    private Passo grupo;
+    private int profundidadeGrupo;
+    private Passo passoLote;
+    // Verdadeiro enquanto um passo é desfeito ou refeito; essas alterações não são registradas
+    private boolean aplicando;
+
+    private final ListChangeListener<Remedio> ouvinteLista = this::aoAlterarLista;
+    private final AlteracoesRemedios.Ouvinte ouvinteCampos = new AlteracoesRemedios.Ouvinte() {
+        @Override
+        public void alterado(Remedio remedio, Remedio.Campo campo, Object antes) {
+            aoAlterarCampo(remedio, campo, antes);
+        }
+
+        @Override
+        public void loteConcluido() {
+            passoLote = null;
+        }
+    };
+
+    public DesfazerRefazer(RepositorioRemedios repositorio, long limiteBytes) {
+        this.remedios = repositorio.getRemedios();
+        this.alteracoes = repositorio.getAlteracoes();
+        this.limiteBytes = limiteBytes;
+    }
+
+    /** Passa a registrar as alterações; o que já está na lista não pode ser desfeito. */
+    public void ligar() {
+        remedios.addListener(ouvinteLista);
+        alteracoes.adicionar(ouvinteCampos);
+    }
+
+    public boolean podeDesfazer() {
+        return grupo == null && !feitos.isEmpty();
+    }
+
+    public boolean podeRefazer() {
+        return grupo == null && !desfeitos.isEmpty();
+    }
+
+    /** Estimativa do heap ocupado pelos passos guardados. */
+    public long estimarMemoria() {
+        return bytes;
+    }
+
+    /**
+     * Tudo o que mudar até {@link #concluirGrupo()} vira um só passo, mesmo
+     * se as alterações chegarem em vários momentos (uma importação em blocos,
+     * por exemplo). Grupos aninhados fazem parte do mais externo.
+     */
+    public void iniciarGrupo(String descricao) {
+        if (profundidadeGrupo++ == 0) {
+            grupo = new Passo(descricao);
+        }
+    }
+
+    public void concluirGrupo() {
+        if (--profundidadeGrupo == 0) {
+            Passo concluido = grupo;
+            grupo = null;
+            if (!concluido.vazio()) {
+                empilhar(concluido);
+            }
+        }
+    }
+
+    /** Desfaz o que o grupo mais externo já alterou e o descarta, sem passar para o refazer. */
+    public void cancelarGrupo() {
+        profundidadeGrupo = 0;
+        Passo cancelado = grupo;
+        grupo = null;
+        if (cancelado != null && !cancelado.vazio()) {
+            aplicar(cancelado, true);
+        }
+    }
+
+    /** Desfaz o último passo; devolve a descrição dele, ou {@code null} se não há o que desfazer. */
+    public String desfazer() {
+        if (!podeDesfazer()) {
+            return null;
+        }
+        Passo passo = feitos.pop();
+        aplicar(passo, true);
+        desfeitos.push(passo);
+        // Uma edição feita depois de desfazer não se junta ao passo anterior
+        if (!feitos.isEmpty()) {
+            feitos.peek().remedioUnico = null;
+        }
+        return passo.descricao;
+    }
+
+    /** Refaz o último passo desfeito; devolve a descrição dele, ou {@code null} se não há o que refazer. */
+    public String refazer() {
+        if (!podeRefazer()) {
+            return null;
+        }
+        Passo passo = desfeitos.pop();
+        aplicar(passo, false);
+        feitos.push(passo);
+        return passo.descricao;
+    }
+
+    private void aplicar(Passo passo, boolean desfazer) {
+        passo.remedioUnico = null;
+        bytes -= passo.bytes;
+        aplicando = true;
+        try {
+            alteracoes.emLote(() -> passo.aplicar(remedios, desfazer));
+        } finally {
+            aplicando = false;
+        }
+        bytes += passo.bytes;
+    }
+
+    // ---- Registro ----
+
+    private void aoAlterarCampo(Remedio r, Remedio.Campo campo, Object antes) {
+        if (aplicando) {
+            return;
+        }
+        Passo passo = passoAtual();
+        if (passo == null) {
+            Passo topo = feitos.peek();
+            if (topo != null && topo.mesclavel(r, System.currentTimeMillis())) {
+                passo = topo;
+            } else {
+                passo = new Passo("Edição de " + r.getNome());
+                passo.remedioUnico = r;
+                empilhar(passo);
+            }
+        }
+        long antesBytes = passo.bytes;
+        passo.adicionarCampo(r, campo, antes);
+        crescer(passo, antesBytes);
+    }
+
+    private void aoAlterarLista(ListChangeListener.Change<? extends Remedio> c) {
+        if (aplicando || apenasAtualizacoes(c)) {
+            return;
+        }
+        Passo passo = passoAtual();
+        if (passo == null) {
+            passo = new Passo("Alteração da lista");
+            empilhar(passo);
+        }
+        long antesBytes = passo.bytes;
+        while (c.next()) {
+            if (c.wasPermutated()) {
+                // Guarda a ordem anterior do trecho permutado
+                List<Remedio> ordemAnterior = new ArrayList<>(c.getTo() - c.getFrom());
+                for (int i = c.getFrom(); i < c.getTo(); i++) {
+                    ordemAnterior.add(c.getList().get(c.getPermutation(i)));
+                }
+                passo.adicionarTrecho(c.getFrom(), ordemAnterior, c.getTo() - c.getFrom());
+            } else if (c.wasRemoved() || c.wasAdded()) {
+                @SuppressWarnings("unchecked")
+                List<Remedio> removidos = (List<Remedio>) c.getRemoved();
+                passo.adicionarTrecho(c.getFrom(), removidos, c.getAddedSize());
+            }
+        }
+        crescer(passo, antesBytes);
+    }
+
+    // Uma atualização (troca de ordem) já foi registrada como alteração de campo
+    private static boolean apenasAtualizacoes(ListChangeListener.Change<? extends Remedio> c) {
+        while (c.next()) {
+            if (!c.wasUpdated()) {
+                c.reset();
+                return false;
+            }
+        }
+        c.reset();
+        return true;
+    }
+
+    // Um grupo aberto recebe tudo; fora dele, um lote em andamento vira um passo
+    private Passo passoAtual() {
+        if (grupo != null) {
+            return grupo;
+        }
+        if (alteracoes.isEmLote()) {
+            if (passoLote == null) {
+                passoLote = new Passo("Alterações em lote");
+                empilhar(passoLote);
+            }
+            return passoLote;
+        }
+        return null;
+    }
+
+    private void empilhar(Passo passo) {
+        desfeitos.forEach(p -> bytes -= p.bytes);
+        desfeitos.clear();
+        feitos.push(passo);
+        bytes += passo.bytes;
+        descartarExcedente();
+    }
+
+    private void crescer(Passo passo, long antesBytes) {
+        // O grupo aberto ainda não está em feitos
+        if (passo != grupo) {
+            bytes += passo.bytes - antesBytes;
+            descartarExcedente();
+        }
+    }
+
+    private void descartarExcedente() {
+        while (bytes > limiteBytes && feitos.size() > 1) {
+            bytes -= feitos.removeLast().bytes;
+        }
+    }
+
+    // ---- Passos ----
+
+    private record AlteracaoCampo(Remedio remedio, Remedio.Campo campo, Object antes, Object depois) { }
+
+    // Em [de, de + tamanhoDepois) da lista depois da alteração estavam antes os remédios de "antes".
+    // "depois" só é preenchido quando o trecho é desfeito, para poder ser refeito.
+    private static final class Trecho {
+        final int de;
+        final List<Remedio> antes;
+        int tamanhoDepois;
+        List<Remedio> depois;
+
+        Trecho(int de, List<Remedio> antes, int tamanhoDepois) {
+            this.de = de;
+            this.antes = antes;
+            this.tamanhoDepois = tamanhoDepois;
+        }
+
+        // Os remédios que estão na lista custam só a referência; os que saíram, o remédio inteiro
+        long custo(boolean desfeito) {
+            int fora = desfeito ? (depois == null ? 0 : depois.size()) : antes.size();
+            int referencias = antes.size() + (depois == null ? 0 : depois.size());
+            return 48 + referencias * 8L + fora * BYTES_POR_REMEDIO;
+        }
+    }
+
+    private static final class Passo {
+        final String descricao;
+        // Na ordem em que aconteceram: AlteracaoCampo ou Trecho
+        final List<Object> alteracoes = new ArrayList<>(4);
+        long bytes = 64;
+        // Passo só de edições de campo de um remédio, que pode receber as próximas edições dele
+        Remedio remedioUnico;
+        long ultimaAlteracao;
+
+        Passo(String descricao) {
+            this.descricao = descricao;
+        }
+
+        boolean vazio() {
+            return alteracoes.isEmpty();
+        }
+
+        boolean mesclavel(Remedio r, long agora) {
+            return remedioUnico == r && agora - ultimaAlteracao <= JANELA_MESCLA_MS;
+        }
+
+        void adicionarCampo(Remedio r, Remedio.Campo campo, Object antes) {
+            Object depois = valor(r, campo);
+            ultimaAlteracao = System.currentTimeMillis();
+            if (remedioUnico != null) {
+                // Numa edição mesclada vale o primeiro "antes" de cada campo
+                for (int i = 0; i < alteracoes.size(); i++) {
+                    AlteracaoCampo a = (AlteracaoCampo) alteracoes.get(i);
+                    if (a.campo() == campo) {
+                        alteracoes.set(i, new AlteracaoCampo(r, campo, a.antes(), depois));
+                        bytes += tamanho(depois) - tamanho(a.depois());
+                        return;
+                    }
+                }
+            }
+            alteracoes.add(new AlteracaoCampo(r, campo, antes, depois));
+            bytes += 48 + tamanho(antes) + tamanho(depois);
+        }
+
+        void adicionarTrecho(int de, List<Remedio> antes, int tamanhoDepois) {
+            remedioUnico = null;
+            // Inclusões seguidas ao fim do trecho anterior (os blocos de uma importação) se juntam a ele
+            if (antes.isEmpty() && !alteracoes.isEmpty()
+                    && alteracoes.get(alteracoes.size() - 1) instanceof Trecho t
+                    && t.depois == null && de == t.de + t.tamanhoDepois) {
+                t.tamanhoDepois += tamanhoDepois;
+                return;
+            }
+            Trecho t = new Trecho(de, antes, tamanhoDepois);
+            alteracoes.add(t);
+            bytes += t.custo(false);
+        }
+
+        void aplicar(ObservableList<Remedio> lista, boolean desfazer) {
+            int n = alteracoes.size();
+            for (int k = 0; k < n; k++) {
+                Object a = alteracoes.get(desfazer ? n - 1 - k : k);
+                if (a instanceof AlteracaoCampo c) {
+                    definir(c.remedio(), c.campo(), desfazer ? c.antes() : c.depois());
+                } else {
+                    Trecho t = (Trecho) a;
+                    bytes -= t.custo(!desfazer);
+                    if (desfazer) {
+                        if (t.depois == null) {
+                            t.depois = new ArrayList<>(lista.subList(t.de, t.de + t.tamanhoDepois));
+                        }
+                        substituir(lista, t.de, t.tamanhoDepois, t.antes);
+                    } else {
+                        substituir(lista, t.de, t.antes.size(), t.depois);
+                    }
+                    bytes += t.custo(desfazer);
+                }
+            }
+            // Marcar ou desmarcar preenche o horário de novo; o horário guardado prevalece
+            for (Object a : alteracoes) {
+                if (a instanceof AlteracaoCampo c && c.campo() == Remedio.Campo.DATA_HORA_TOMADO) {
+                    definir(c.remedio(), c.campo(), desfazer ? c.antes() : c.depois());
+                }
+            }
+        }
+    }
+
+    private static void substituir(ObservableList<Remedio> lista, int de, int quantidade, List<Remedio> novos) {
+        if (de == 0 && quantidade == lista.size()) {
+            lista.setAll(novos);
+            return;
+        }
+        if (quantidade > 0) {
+            lista.subList(de, de + quantidade).clear();
+        }
+        if (!novos.isEmpty()) {
+            lista.addAll(de, novos);
+        }
+    }
+
+    private static Object valor(Remedio r, Remedio.Campo campo) {
+        return switch (campo) {
+            case NOME -> r.getNome();
+            case OBSERVACOES -> r.getObservacoes();
+            case DOSAGEM -> r.getDosagem();
+            case FREQUENCIA -> r.getFrequencia();
+            case TOMADO -> r.isTomado();
+            case DATA_HORA_TOMADO -> r.getDataHoraTomado();
+            case ORDEM -> r.getOrdem();
+        };
+    }
+
+    private static void definir(Remedio r, Remedio.Campo campo, Object valor) {
+        switch (campo) {
+            case NOME -> r.setNome((String) valor);
+            case OBSERVACOES -> r.setObservacoes((String) valor);
+            case DOSAGEM -> r.setDosagem((String) valor);
+            case FREQUENCIA -> r.setFrequencia((String) valor);
+            case TOMADO -> r.setTomado((Boolean) valor);
+            case DATA_HORA_TOMADO -> r.setDataHoraTomado((String) valor);
+            case ORDEM -> r.setOrdem((Double) valor);
+        }
+    }
+
+    private static long tamanho(Object valor) {
+        return valor instanceof String s ? 40 + s.length() : 0;
+    }
+}
@@ -0,0 +1,305 @@
+package org.example;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Instrumentação dos caminhos quentes: eventos do JDK Flight Recorder e
+ * histogramas de latência, para o painel de diagnóstico.
+ *
+ * Cada trecho medido cria um dos eventos abaixo e chama {@link Medicao#concluir()}
+ * ao fim; o evento vai para a gravação do JFR, se houver uma em andamento
+ * ({@code -XX:StartFlightRecording}), e a duração entra sempre no histograma
+ * da operação. Sem gravação, o custo é o de dois {@link System#nanoTime()}.
+ *
+ * Os histogramas são do processo inteiro e podem ser atualizados de qualquer thread.
+ */
+public final class Diagnostico {
+
+    public enum Operacao {
+        CARGA("Carga"),
+        GRAVACAO("Gravação"),
+        PESQUISA("Pesquisa"),
+        ALTERACAO_LISTA("Alteração da lista"),
+        ESTATISTICAS("Estatísticas"),
+        RESPOSTA_FX("Resposta da thread do JavaFX"),
+        TRAVAMENTO_FX("Travamento da thread do JavaFX");
+
+        private final String descricao;
+
+        Operacao(String descricao) {
+            this.descricao = descricao;
+        }
+
+        @Override
+        public String toString() {
+            return descricao;
+        }
+    }
+
+    /** Travamento da thread do JavaFX, com a pilha dela no momento em que foi detectado. */
+    public record Travamento(LocalDateTime quando, long milissegundos, String pilha) { }
+
+    private static final int MAXIMO_TRAVAMENTOS = 20;
+    private static final DateTimeFormatter FORMATO = DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm:ss");
+
+    private static final Map<Operacao, Histograma> HISTOGRAMAS = new EnumMap<>(Operacao.class);
+    private static final Deque<Travamento> TRAVAMENTOS = new ArrayDeque<>();
+
+    static {
+        for (Operacao o : Operacao.values()) {
+            HISTOGRAMAS.put(o, new Histograma());
+        }
+    }
+
+    private Diagnostico() {
+    }
+
+    public static Histograma histograma(Operacao operacao) {
+        return HISTOGRAMAS.get(operacao);
+    }
+
+    static void registrarTravamento(Travamento travamento) {
+        histograma(Operacao.TRAVAMENTO_FX).registrar(travamento.milissegundos() * 1_000_000);
+        synchronized (TRAVAMENTOS) {
+            if (TRAVAMENTOS.size() == MAXIMO_TRAVAMENTOS) {
+                TRAVAMENTOS.removeFirst();
+            }
+            TRAVAMENTOS.addLast(travamento);
+        }
+    }
+
+    public static List<Travamento> getTravamentos() {
+        synchronized (TRAVAMENTOS) {
+            return new ArrayList<>(TRAVAMENTOS);
+        }
+    }
+
+    /** Texto com os percentis, a distribuição de cada operação e os últimos travamentos. */
+    public static String relatorio() {
+        StringBuilder b = new StringBuilder();
+        b.append("Diagnóstico de ").append(LocalDateTime.now().format(FORMATO)).append("\n\n");
+        b.append(String.format(Locale.ROOT, "%-30s %8s %10s %10s %10s %10s%n",
+                "Operação", "n", "p50", "p90", "p99", "máx"));
+        for (Operacao o : Operacao.values()) {
+            Histograma h = histograma(o);
+            b.append(String.format(Locale.ROOT, "%-30s %8d %10s %10s %10s %10s%n", o, h.getContagem(),
+                    duracao(h.percentil(0.5)), duracao(h.percentil(0.9)),
+                    duracao(h.percentil(0.99)), duracao(h.getMaximo())));
+        }
+        for (Operacao o : Operacao.values()) {
+            Histograma h = histograma(o);
+            if (h.getContagem() == 0) {
+                continue;
+            }
+            b.append('\n').append(o).append(":\n");
+            long maior = 1;
+            for (int i = 0; i < Histograma.FAIXAS; i++) {
+                maior = Math.max(maior, h.getFaixa(i));
+            }
+            for (int i = 0; i < Histograma.FAIXAS; i++) {
+                long n = h.getFaixa(i);
+                if (n > 0) {
+                    b.append(String.format(Locale.ROOT, "  < %9s %8d %s%n", duracao(Histograma.limiteSuperior(i)),
+                            n, "#".repeat((int) Math.max(1, n * 40 / maior))));
+                }
+            }
+        }
+        List<Travamento> travamentos = getTravamentos();
+        b.append("\nTravamentos da thread do JavaFX (últimos ").append(MAXIMO_TRAVAMENTOS).append("): ")
+                .append(travamentos.size()).append('\n');
+        for (Travamento t : travamentos) {
+            b.append('\n').append(t.quando().format(FORMATO)).append(" — ")
+                    .append(t.milissegundos()).append(" ms\n").append(t.pilha());
+        }
+        return b.toString();
+    }
+
+    public static void exportar(Path arquivo) throws IOException {
+        Files.writeString(arquivo, relatorio(), StandardCharsets.UTF_8);
+    }
+
+    private static String duracao(long nanos) {
+        if (nanos < 1_000_000) {
+            return String.format(Locale.ROOT, "%.1f µs", nanos / 1e3);
+        }
+        if (nanos < 1_000_000_000) {
+            return String.format(Locale.ROOT, "%.1f ms", nanos / 1e6);
+        }
+        return String.format(Locale.ROOT, "%.2f s", nanos / 1e9);
+    }
+
+    /**
+     * Histograma de durações em faixas de potências de 2 (em microssegundos):
+     * a faixa i conta as durações abaixo de 2^i µs e acima da faixa anterior.
+     * Os percentis são o limite superior da faixa, então erram no máximo por um fator de 2.
+     */
+    public static final class Histograma {
+        static final int FAIXAS = 32;
+
+        private final AtomicLongArray faixas = new AtomicLongArray(FAIXAS);
+        private final LongAdder contagem = new LongAdder();
+        private final LongAccumulator maximo = new LongAccumulator(Math::max, 0);
+
+        public void registrar(long nanos) {
+            long micros = nanos / 1_000;
+            int faixa = Math.min(FAIXAS - 1, 64 - Long.numberOfLeadingZeros(micros));
+            faixas.incrementAndGet(faixa);
+            contagem.increment();
+            maximo.accumulate(nanos);
+        }
+
+        public long getContagem() {
+            return contagem.sum();
+        }
+
+        public long getMaximo() {
+            return maximo.get();
+        }
+
+        long getFaixa(int i) {
+            return faixas.get(i);
+        }
+
+        static long limiteSuperior(int faixa) {
+            return (1L << faixa) * 1_000;
+        }
+
+        /** Duração (ns) abaixo da qual está a fração {@code p} das medições; 0 sem medições. */
+        public long percentil(double p) {
+            long total = getContagem();
+            if (total == 0) {
+                return 0;
+            }
+            long alvo = (long) Math.ceil(total * p);
+            long acumulado = 0;
+            for (int i = 0; i < FAIXAS; i++) {
+                acumulado += faixas.get(i);
+                if (acumulado >= alvo) {
+                    return Math.min(limiteSuperior(i), getMaximo());
+                }
+            }
+            return getMaximo();
+        }
+    }
+
+    // ---- Eventos do JFR ----
+
+    /** Trecho medido: começa na criação do evento e termina em {@link #concluir()}. */
+    @Category("Gerenciador de Remédios")
+    public abstract static class Medicao extends Event {
+        private final transient Operacao operacao;
+        private final transient long inicio = System.nanoTime();
+
+        Medicao(Operacao operacao) {
+            this.operacao = operacao;
+            begin();
+        }
+
+        public void concluir() {
+            commit();
+            histograma(operacao).registrar(System.nanoTime() - inicio);
+        }
+    }
+
+    @Name("org.example.Carga")
+    @Label("Carga de remédios")
+    public static final class Carga extends Medicao {
+        @Label("Arquivo")
+        public String arquivo;
+        @Label("Tamanho") @DataAmount
+        public long bytes;
+        @Label("Remédios")
+        public int remedios;
+
+        public Carga(Path arquivo) {
+            super(Operacao.CARGA);
+            this.arquivo = arquivo.toString();
+        }
+    }
+
+    @Name("org.example.Gravacao")
+    @Label("Gravação")
+    public static final class Gravacao extends Medicao {
+        @Label("Tipo")
+        public String tipo;
+        @Label("Tamanho") @DataAmount
+        public long bytes;
+
+        public Gravacao(String tipo) {
+            super(Operacao.GRAVACAO);
+            this.tipo = tipo;
+        }
+    }
+
+    @Name("org.example.Pesquisa")
+    @Label("Pesquisa")
+    public static final class Pesquisa extends Medicao {
+        @Label("Tamanho da consulta")
+        public int tamanhoConsulta;
+        @Label("Encontrados")
+        public int encontrados;
+
+        public Pesquisa(String consulta) {
+            super(Operacao.PESQUISA);
+            this.tamanhoConsulta = consulta.length();
+        }
+    }
+
+    @Name("org.example.AlteracaoLista")
+    @Label("Alteração da lista")
+    public static final class AlteracaoLista extends Medicao {
+        @Label("Origem")
+        public String origem;
+        // Remédios entregues (carga) ou alterações de campo avisadas (lote)
+        @Label("Itens")
+        public int itens;
+
+        public AlteracaoLista(String origem) {
+            super(Operacao.ALTERACAO_LISTA);
+            this.origem = origem;
+        }
+    }
+
+    @Name("org.example.Estatisticas")
+    @Label("Cálculo de estatísticas")
+    public static final class Estatisticas extends Medicao {
+        @Label("Remédios no histórico")
+        public int remedios;
+
+        public Estatisticas() {
+            super(Operacao.ESTATISTICAS);
+        }
+    }
+
+    @Name("org.example.TravamentoFx")
+    @Label("Travamento da thread do JavaFX")
+    @Category("Gerenciador de Remédios")
+    public static final class TravamentoFx extends Event {
+        @Label("Duração") @Timespan(Timespan.MILLISECONDS)
+        public long duracao;
+        @Label("Pilha")
+        public String pilha;
+    }
+}
@@ -0,0 +1,736 @@
+package org.example;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import javafx.collections.ListChangeListener;
+import javafx.collections.ObservableList;
+
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Persistência por diário (write-ahead log) da lista de remédios.
+ *
+ * Cada alteração da lista vira uma linha JSON pequena anexada ao arquivo
+ * de diário; uma thread de escrita grava as linhas em lotes e faz um único
+ * fsync por lote. Quando o diário cresce, ele é rotacionado e uma compactação
+ * em segundo plano grava um novo snapshot completo.
+ *
+ * O snapshot guarda a "geração" e cada segmento de diário começa com a geração
+ * sobre a qual ele se aplica, assim um segmento já incorporado nunca é reaplicado.
+ *
+ * O snapshot é gravado no formato de {@link SnapshotBinario}; um snapshot JSON
+ * de versões anteriores é convertido na primeira abertura.
+ *
+ * As alterações de um lote ({@link AlteracoesRemedios#emLote}) vão para uma
+ * única linha "T", com um "U" por remédio alterado; como uma linha incompleta
+ * é descartada na reaplicação, o lote é recuperado inteiro ou não é.
+ *
+ * Enquanto aberto, o diário mantém uma trava do sistema operacional sobre
+ * os arquivos, então uma segunda instância do programa não consegue abri-los.
+ * Programas de fora não respeitam a trava; para reconhecer um snapshot
+ * substituído por eles, o diário guarda a {@link Versao} do último que gravou
+ * e um resumo do conteúdo dele ({@link #aguardarBase()}).
+ */
+public class DiarioRemedios {
+
+    private static final int LIMITE_REGISTROS = 5_000;
+    private static final Object FIM = new Object();
+    // A trava cobre um byte bem depois do conteúdo, para que o dono possa ser lido
+    // mesmo onde as travas impedem a leitura (Windows)
+    private static final long POSICAO_TRAVA = Long.MAX_VALUE - 1;
+
+    /**
+     * Carimbo de versão do snapshot em disco: geração do cabeçalho, tamanho e
+     * horário de modificação. Um snapshot com carimbo diferente do último
+     * gravado pelo diário foi substituído por fora.
+     */
+    public record Versao(long geracao, long tamanho, FileTime modificado) {
+        /** Versão atual do arquivo, ou {@code null} se ele não existe. */
+        public static Versao de(Path snapshot) throws IOException {
+            if (!Files.exists(snapshot)) {
+                return null;
+            }
+            return new Versao(lerGeracao(snapshot), Files.size(snapshot), Files.getLastModifiedTime(snapshot));
+        }
+    }
+
+    private final Path snapshot;
+    private final Path diario;
+    private final Path diarioRotacionado;
+    private final Gson gson = RemedioTypeAdapter.criarGson();
+    private final Consumer<String> aoFalhar;
+
+    private final BlockingQueue<Object> fila = new LinkedBlockingQueue<>();
+    private final ExecutorService compactador = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "diario-compactador");
+        t.setDaemon(true);
+        return t;
+    });
+    private final Thread escritor;
+    private final FileChannel canalTrava;
+    private BufferedWriter saida;
+    private FileOutputStream saidaArquivo;
+    // Escrito em gravarSnapshot, sob o monitor do diário
+    private Versao versaoGravada;
+    private volatile VersaoArquivo base;
+
+    private ObservableList<Remedio> observada;
+    private AlteracoesRemedios alteracoes;
+    // Lote em andamento: linhas já montadas e remédios com campos alterados
+    private final List<String> linhasLote = new ArrayList<>();
+    private final Set<Remedio> alteradosLote = new LinkedHashSet<>();
+    private long geracao;
+    private int registrosDesdeSnapshot;
+    private volatile boolean compactando;
+
+    private DiarioRemedios(Path snapshot, FileChannel canalTrava, long geracao, Consumer<String> aoFalhar) {
+        this.snapshot = snapshot;
+        this.canalTrava = canalTrava;
+        this.diario = Path.of(snapshot + ".diario");
+        this.diarioRotacionado = Path.of(snapshot + ".diario.1");
+        this.geracao = geracao;
+        this.aoFalhar = aoFalhar;
+        this.escritor = new Thread(this::loopEscrita, "diario-escritor");
+        this.escritor.setDaemon(true);
+    }
+
+    /**
+     * Prepara o diário para receber alterações. Se havia diário pendente
+     * (por exemplo, após uma queda), ele é reaplicado sobre o snapshot e
+     * incorporado num snapshot novo, de modo que depois desta chamada o
+     * snapshot em disco reflete todo o estado salvo e pode ser lido em fluxo.
+     *
+     * @throws IOException também se os arquivos já estão abertos por outra
+     *                     instância do programa; a mensagem diz qual
+     */
+    public static DiarioRemedios abrir(Path snapshot, Path snapshotJson, Consumer<String> aoFalhar)
+            throws IOException {
+        FileChannel canalTrava = travar(Path.of(snapshot + ".trava"));
+        try {
+            if (!Files.exists(snapshot) && Files.exists(snapshotJson)) {
+                converterJson(snapshotJson, snapshot);
+            }
+            DiarioRemedios d = new DiarioRemedios(snapshot, canalTrava, lerGeracao(snapshot), aoFalhar);
+            if (Files.exists(d.diarioRotacionado) || Files.exists(d.diario)) {
+                List<Remedio> remedios = new ArrayList<>();
+                lerSnapshot(snapshot, remedios::add);
+                d.reaplicar(d.diarioRotacionado, remedios);
+                d.reaplicar(d.diario, remedios);
+                d.geracao++;
+                d.gravarSnapshot(remedios, d.geracao);
+                d.base = VersaoArquivo.de(remedios);
+                Files.deleteIfExists(d.diarioRotacionado);
+                Files.deleteIfExists(d.diario);
+            } else {
+                d.versaoGravada = Versao.de(snapshot);
+                // O resumo é montado em segundo plano, enquanto a lista é carregada
+                d.compactador.submit(() -> {
+                    try {
+                        d.base = VersaoArquivo.ler(snapshot);
+                    } catch (IOException ex) {
+                        aoFalhar.accept("Falha ao ler snapshot: " + ex.getMessage());
+                    }
+                });
+            }
+
+            d.abrirSegmento();
+            d.escritor.start();
+            return d;
+        } catch (IOException | RuntimeException ex) {
+            canalTrava.close();
+            throw ex;
+        }
+    }
+
+    // Trava exclusiva do sistema operacional; o arquivo diz quem a tem, para a mensagem de erro
+    private static FileChannel travar(Path arquivo) throws IOException {
+        FileChannel canal = FileChannel.open(arquivo, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        FileLock trava;
+        try {
+            trava = canal.tryLock(POSICAO_TRAVA, 1, false);
+        } catch (OverlappingFileLockException ex) {
+            // Já travado por este mesmo processo
+            trava = null;
+        } catch (IOException ex) {
+            canal.close();
+            throw ex;
+        }
+        if (trava == null) {
+            String dono = new String(Files.readAllBytes(arquivo), StandardCharsets.UTF_8).strip();
+            canal.close();
+            throw new IOException("dados em uso por outra instância do programa"
+                    + (dono.isEmpty() ? "" : " (" + dono + ")"));
+        }
+        String dono = ManagementFactory.getRuntimeMXBean().getName() + " desde "
+                + LocalDateTime.now().format(DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm:ss"));
+        canal.truncate(0);
+        canal.write(ByteBuffer.wrap(dono.getBytes(StandardCharsets.UTF_8)), 0);
+        canal.force(false);
+        return canal;
+    }
+
+    /**
+     * Resumo do conteúdo do último snapshot lido ou gravado, ou de uma versão
+     * externa adotada. Logo depois de abrir ele ainda está sendo montado, e
+     * durante uma compactação vai mudar; nos dois casos a chamada espera (segundo plano).
+     */
+    public VersaoArquivo aguardarBase() throws IOException {
+        try {
+            return compactador.submit(() -> base).get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrompido esperando a base");
+        } catch (ExecutionException ex) {
+            throw new IOException(ex.getCause());
+        }
+    }
+
+    /** Passa a usar como base uma versão externa já incorporada à lista. */
+    public void adotarBase(VersaoArquivo versao) {
+        base = versao;
+    }
+
+    /** Se o snapshot em disco não é mais o último gravado por este diário. */
+    public synchronized boolean isSubstituido() throws IOException {
+        return !Objects.equals(Versao.de(snapshot), versaoGravada);
+    }
+
+    /** Passa a registrar no diário toda alteração feita na lista e nos seus remédios. */
+    public void observar(RepositorioRemedios repositorio) {
+        observada = repositorio.getRemedios();
+        observada.addListener(this::aoAlterarLista);
+        alteracoes = repositorio.getAlteracoes();
+        alteracoes.adicionar(new AlteracoesRemedios.Ouvinte() {
+            @Override
+            public void alterado(Remedio remedio, Remedio.Campo campo, Object antes) {
+                aoAlterarCampo(remedio);
+            }
+
+            @Override
+            public void loteConcluido() {
+                concluirLote();
+            }
+        });
+    }
+
+    /**
+     * Grava o que estiver pendente, compacta o diário num snapshot e encerra a escrita.
+     * Devolve se havia alteração a gravar; sem alterações o snapshot não é regravado.
+     */
+    public boolean fechar() {
+        List<Remedio> copia = observada == null ? null : copiar(observada);
+        boolean alterado = false;
+        fila.add(FIM);
+        try {
+            escritor.join();
+            compactador.shutdown();
+            compactador.awaitTermination(1, TimeUnit.MINUTES);
+            if (copia != null && registrosDesdeSnapshot > 0) {
+                gravarSnapshot(copia, geracao + 1);
+                Files.deleteIfExists(diarioRotacionado);
+                alterado = true;
+            }
+            if (copia != null) {
+                // Tudo já está no snapshot; resta só o cabeçalho do segmento
+                Files.deleteIfExists(diario);
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } catch (IOException ex) {
+            aoFalhar.accept("Falha ao salvar dados: " + ex.getMessage());
+        }
+        try {
+            // Fechar o canal libera a trava
+            canalTrava.close();
+        } catch (IOException ex) {
+            aoFalhar.accept("Falha ao liberar trava dos dados: " + ex.getMessage());
+        }
+        return alterado;
+    }
+
+    // ---- Captura das alterações (thread do JavaFX) ----
+
+    private void aoAlterarLista(ListChangeListener.Change<? extends Remedio> c) {
+        while (c.next()) {
+            if (c.wasPermutated()) {
+                List<Long> ids = new ArrayList<>();
+                for (int i = c.getFrom(); i < c.getTo(); i++) {
+                    ids.add(c.getList().get(i).getId());
+                }
+                registrar(w -> {
+                    w.name("op").value("O");
+                    w.name("de").value(c.getFrom());
+                    w.name("ids").beginArray();
+                    for (long id : ids) {
+                        w.value(id);
+                    }
+                    w.endArray();
+                });
+                continue;
+            }
+            if (c.wasRemoved()) {
+                int tamanhoAnterior = c.getList().size() - c.getAddedSize() + c.getRemovedSize();
+                if (c.getFrom() == 0 && c.getRemovedSize() == tamanhoAnterior) {
+                    registrar(w -> w.name("op").value("L"));
+                } else {
+                    for (Remedio r : c.getRemoved()) {
+                        registrar(w -> {
+                            w.name("op").value("R");
+                            w.name("id").value(r.getId());
+                        });
+                    }
+                }
+            }
+            if (c.wasAdded()) {
+                int pos = c.getFrom();
+                for (Remedio r : c.getAddedSubList()) {
+                    int p = pos++;
+                    registrar(w -> {
+                        w.name("op").value("A");
+                        w.name("pos").value(p);
+                        w.name("r");
+                        gson.toJson(r, Remedio.class, w);
+                    });
+                }
+            }
+        }
+        talvezCompactar();
+    }
+
+    private void aoAlterarCampo(Remedio r) {
+        if (alteracoes.isEmLote()) {
+            // Só o estado final de cada remédio é gravado, no fim do lote
+            alteradosLote.add(r);
+            return;
+        }
+        registrar(linhaCampos(r));
+        talvezCompactar();
+    }
+
+    private String linhaCampos(Remedio r) {
+        return linha(w -> {
+            w.name("op").value("U");
+            w.name("r");
+            gson.toJson(r, Remedio.class, w);
+        });
+    }
+
+    private void concluirLote() {
+        for (Remedio r : alteradosLote) {
+            linhasLote.add(linhaCampos(r));
+            registrosDesdeSnapshot++;
+        }
+        alteradosLote.clear();
+        if (linhasLote.size() == 1) {
+            fila.add(linhasLote.get(0));
+        } else if (!linhasLote.isEmpty()) {
+            fila.add("{\"op\":\"T\",\"ops\":[" + String.join(",", linhasLote) + "]}");
+        }
+        linhasLote.clear();
+        talvezCompactar();
+    }
+
+    private interface Corpo {
+        void escrever(JsonWriter w) throws IOException;
+    }
+
+    private void registrar(Corpo corpo) {
+        registrar(linha(corpo));
+    }
+
+    private void registrar(String linha) {
+        if (alteracoes.isEmLote()) {
+            linhasLote.add(linha);
+        } else {
+            fila.add(linha);
+        }
+        registrosDesdeSnapshot++;
+    }
+
+    private static String linha(Corpo corpo) {
+        StringWriter linha = new StringWriter();
+        try (JsonWriter w = new JsonWriter(linha)) {
+            w.beginObject();
+            corpo.escrever(w);
+            w.endObject();
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        return linha.toString();
+    }
+
+    // Chamado ao fim de cada alteração, para que a cópia reflita exatamente o que já está no diário;
+    // dentro de um lote só no fim dele
+    private void talvezCompactar() {
+        if (!compactando && !alteracoes.isEmLote() && registrosDesdeSnapshot > Math.max(LIMITE_REGISTROS, observada.size())) {
+            compactando = true;
+            registrosDesdeSnapshot = 0;
+            fila.add(new Rotacao(copiar(observada), 0));
+        }
+    }
+
+    /**
+     * Grava já um snapshot novo da lista, sobre um substituído por fora; a
+     * geração passa da dele para que o diário continue valendo sobre ele
+     * até a gravação terminar. Se uma compactação já está em andamento, o
+     * snapshot dela faz o mesmo papel.
+     */
+    public void compactar(long geracaoExterna) {
+        if (!compactando) {
+            compactando = true;
+            registrosDesdeSnapshot = 0;
+            fila.add(new Rotacao(copiar(observada), geracaoExterna));
+        }
+    }
+
+    private static List<Remedio> copiar(List<Remedio> lista) {
+        List<Remedio> copia = new ArrayList<>(lista.size());
+        for (Remedio r : lista) {
+            copia.add(r.copiar());
+        }
+        return copia;
+    }
+
+    // ---- Escrita em segundo plano ----
+
+    private record Rotacao(List<Remedio> remedios, long geracaoMinima) { }
+
+    private void loopEscrita() {
+        List<Object> lote = new ArrayList<>();
+        boolean fim = false;
+        while (!fim) {
+            try {
+                lote.add(fila.take());
+                fila.drainTo(lote);
+                Diagnostico.Gravacao evento = new Diagnostico.Gravacao("diário");
+                for (Object item : lote) {
+                    if (item == FIM) {
+                        fim = true;
+                    } else if (item instanceof Rotacao rotacao) {
+                        rotacionar(rotacao);
+                    } else {
+                        String linha = (String) item;
+                        saida.write(linha);
+                        saida.newLine();
+                        evento.bytes += linha.length() + 1;
+                    }
+                }
+                // Um único fsync para todo o lote
+                saida.flush();
+                saidaArquivo.getChannel().force(false);
+                evento.concluir();
+            } catch (InterruptedException ex) {
+                fim = true;
+            } catch (IOException ex) {
+                aoFalhar.accept("Falha ao gravar diário: " + ex.getMessage());
+            }
+            lote.clear();
+        }
+        try {
+            saida.close();
+        } catch (IOException ex) {
+            aoFalhar.accept("Falha ao fechar diário: " + ex.getMessage());
+        }
+    }
+
+    private void rotacionar(Rotacao rotacao) throws IOException {
+        saida.flush();
+        saidaArquivo.getChannel().force(false);
+        saida.close();
+        Files.move(diario, diarioRotacionado, StandardCopyOption.REPLACE_EXISTING);
+        geracao = Math.max(geracao, rotacao.geracaoMinima());
+        long novaGeracao = ++geracao;
+        abrirSegmento();
+
+        List<Remedio> copia = rotacao.remedios();
+        compactador.submit(() -> {
+            try {
+                gravarSnapshot(copia, novaGeracao);
+                base = VersaoArquivo.de(copia);
+                Files.deleteIfExists(diarioRotacionado);
+            } catch (IOException ex) {
+                aoFalhar.accept("Falha ao compactar diário: " + ex.getMessage());
+            } finally {
+                compactando = false;
+            }
+        });
+    }
+
+    private void abrirSegmento() throws IOException {
+        saidaArquivo = new FileOutputStream(diario.toFile(), true);
+        saida = new BufferedWriter(new OutputStreamWriter(saidaArquivo, StandardCharsets.UTF_8));
+        if (saidaArquivo.getChannel().size() == 0) {
+            JsonObject cabecalho = new JsonObject();
+            cabecalho.addProperty("base", geracao);
+            saida.write(cabecalho.toString());
+            saida.newLine();
+            saida.flush();
+        }
+    }
+
+    // ---- Snapshot ----
+
+    /** Lê um snapshot em qualquer dos formatos (binário ou JSON); devolve a geração. */
+    static long lerSnapshot(Path arquivo, Consumer<Remedio> destino) throws IOException {
+        if (!Files.exists(arquivo)) {
+            return 0;
+        }
+        if (SnapshotBinario.lerCabecalho(arquivo) != null) {
+            return SnapshotBinario.ler(arquivo, destino);
+        }
+        try (Reader in = Files.newBufferedReader(arquivo, StandardCharsets.UTF_8)) {
+            return lerSnapshot(in, destino);
+        }
+    }
+
+    /**
+     * Lê em fluxo um snapshot JSON (ou um arquivo exportado), entregando cada remédio
+     * ao destino assim que é lido. Aceita o formato atual, um objeto com
+     * "geracao" e "remedios", e o antigo, apenas o array de remédios.
+     */
+    static long lerSnapshot(Reader reader, Consumer<Remedio> destino) throws IOException {
+        Gson gson = RemedioTypeAdapter.criarGson();
+        try (JsonReader in = new JsonReader(reader)) {
+            if (in.peek() == JsonToken.BEGIN_ARRAY) {
+                lerArray(in, gson, destino);
+                return 0;
+            }
+            long geracao = 0;
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "geracao" -> geracao = in.nextLong();
+                    case "remedios" -> lerArray(in, gson, destino);
+                    default -> in.skipValue();
+                }
+            }
+            in.endObject();
+            return geracao;
+        } catch (JsonParseException | IllegalStateException ex) {
+            throw new IOException("arquivo corrompido", ex);
+        }
+    }
+
+    // A geração é gravada antes dos remédios, então não é preciso ler o arquivo inteiro
+    private static long lerGeracao(Path arquivo) throws IOException {
+        if (!Files.exists(arquivo)) {
+            return 0;
+        }
+        SnapshotBinario.Cabecalho cabecalho = SnapshotBinario.lerCabecalho(arquivo);
+        if (cabecalho != null) {
+            return cabecalho.geracao();
+        }
+        try (JsonReader in = new JsonReader(Files.newBufferedReader(arquivo, StandardCharsets.UTF_8))) {
+            if (in.peek() != JsonToken.BEGIN_OBJECT) {
+                return 0;
+            }
+            in.beginObject();
+            while (in.hasNext()) {
+                if (in.nextName().equals("geracao")) {
+                    return in.nextLong();
+                }
+                in.skipValue();
+            }
+            return 0;
+        } catch (JsonParseException | IllegalStateException ex) {
+            throw new IOException("arquivo corrompido: " + arquivo, ex);
+        }
+    }
+
+    private static void lerArray(JsonReader in, Gson gson, Consumer<Remedio> destino) throws IOException {
+        in.beginArray();
+        while (in.hasNext()) {
+            destino.accept(gson.fromJson(in, Remedio.class));
+        }
+        in.endArray();
+    }
+
+    // A versão gravada é atualizada junto com a troca do arquivo, para que
+    // isSubstituido nunca veja a gravação do próprio diário como externa
+    private synchronized void gravarSnapshot(List<Remedio> remedios, long geracaoSnapshot) throws IOException {
+        gravarSnapshot(snapshot, remedios, geracaoSnapshot);
+        versaoGravada = Versao.de(snapshot);
+    }
+
+    private static void gravarSnapshot(Path destino, List<Remedio> remedios, long geracaoSnapshot)
+            throws IOException {
+        Diagnostico.Gravacao evento = new Diagnostico.Gravacao("snapshot");
+        Path temporario = Path.of(destino + ".tmp");
+        SnapshotBinario.gravar(temporario, geracaoSnapshot, remedios);
+        evento.bytes = Files.size(temporario);
+        Files.move(temporario, destino,
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        evento.concluir();
+    }
+
+    // Os segmentos pendentes do diário antigo passam para o nome novo antes do snapshot
+    // convertido ser gravado; se a conversão for interrompida, ela é refeita na próxima abertura.
+    // O JSON fica como cópia de segurança (.bak).
+    private static void converterJson(Path json, Path snapshot) throws IOException {
+        for (String sufixo : new String[]{".diario", ".diario.1"}) {
+            Path antigo = Path.of(json + sufixo);
+            if (Files.exists(antigo)) {
+                Files.move(antigo, Path.of(snapshot + sufixo), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        List<Remedio> remedios = new ArrayList<>();
+        long geracao = lerSnapshot(json, remedios::add);
+        gravarSnapshot(snapshot, remedios, geracao);
+        Files.move(json, Path.of(json + ".bak"), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    // ---- Reaplicação do diário ----
+
+    private void reaplicar(Path segmento, List<Remedio> remedios) throws IOException {
+        if (!Files.exists(segmento)) {
+            return;
+        }
+        try (BufferedReader leitor = Files.newBufferedReader(segmento, StandardCharsets.UTF_8)) {
+            long base;
+            try {
+                base = JsonParser.parseString(leitor.readLine()).getAsJsonObject().get("base").getAsLong();
+            } catch (RuntimeException ex) {
+                // Segmento vazio ou com cabeçalho incompleto
+                return;
+            }
+            if (base < geracao) {
+                // Segmento já incorporado ao snapshot atual
+                return;
+            }
+            ListaReaplicada lista = new ListaReaplicada(remedios);
+            String linha;
+            while ((linha = leitor.readLine()) != null) {
+                JsonObject registro;
+                try {
+                    registro = JsonParser.parseString(linha).getAsJsonObject();
+                } catch (JsonParseException | IllegalStateException ex) {
+                    // Última linha incompleta de uma gravação interrompida
+                    break;
+                }
+                aplicar(registro, lista);
+            }
+            lista.compactar();
+        }
+    }
+
+    /**
+     * A lista em reaplicação. Remoções só marcam o remédio, sem procurá-lo nem
+     * deslocar os demais; a lista é refeita uma vez no fim (ou antes de uma
+     * operação que dependa das posições), e não a cada registro.
+     */
+    private static final class ListaReaplicada {
+        final List<Remedio> remedios;
+        final Map<Long, Remedio> porId = new HashMap<>();
+        private final Set<Remedio> removidos = Collections.newSetFromMap(new IdentityHashMap<>());
+
+        ListaReaplicada(List<Remedio> remedios) {
+            this.remedios = remedios;
+            remedios.forEach(r -> porId.put(r.getId(), r));
+        }
+
+        int tamanho() {
+            return remedios.size() - removidos.size();
+        }
+
+        void incluir(int pos, Remedio novo) {
+            Remedio antigo = porId.put(novo.getId(), novo);
+            if (antigo != null) {
+                removidos.add(antigo);
+            }
+            // O caso comum, incluir no fim, não precisa das posições exatas
+            if (pos >= tamanho()) {
+                remedios.add(novo);
+            } else {
+                compactar();
+                remedios.add(pos, novo);
+            }
+        }
+
+        void remover(long id) {
+            Remedio removido = porId.remove(id);
+            if (removido != null) {
+                removidos.add(removido);
+            }
+        }
+
+        void limpar() {
+            remedios.clear();
+            porId.clear();
+            removidos.clear();
+        }
+
+        void compactar() {
+            if (!removidos.isEmpty()) {
+                remedios.removeIf(removidos::contains);
+                removidos.clear();
+            }
+        }
+    }
+
+    private void aplicar(JsonObject registro, ListaReaplicada lista) {
+        Map<Long, Remedio> porId = lista.porId;
+        switch (registro.get("op").getAsString()) {
+            case "A" -> lista.incluir(registro.get("pos").getAsInt(), gson.fromJson(registro.get("r"), Remedio.class));
+            case "R" -> lista.remover(registro.get("id").getAsLong());
+            case "U" -> {
+                Remedio lido = gson.fromJson(registro.get("r"), Remedio.class);
+                Remedio atual = porId.get(lido.getId());
+                if (atual != null) {
+                    atual.setNome(lido.getNome());
+                    atual.setObservacoes(lido.getObservacoes());
+                    atual.setDosagem(lido.getDosagem());
+                    atual.setFrequencia(lido.getFrequencia());
+                    atual.setTomado(lido.isTomado());
+                    atual.setDataHoraTomado(lido.getDataHoraTomado());
+                    atual.setOrdem(lido.getOrdem());
+                }
+            }
+            case "O" -> {
+                lista.compactar();
+                List<Remedio> remedios = lista.remedios;
+                int de = registro.get("de").getAsInt();
+                var ids = registro.getAsJsonArray("ids");
+                for (int i = 0; i < ids.size() && de + i < remedios.size(); i++) {
+                    Remedio r = porId.get(ids.get(i).getAsLong());
+                    if (r != null) {
+                        remedios.set(de + i, r);
+                    }
+                }
+            }
+            case "L" -> lista.limpar();
+            case "T" -> {
+                for (var op : registro.getAsJsonArray("ops")) {
+                    aplicar(op.getAsJsonObject(), lista);
+                }
+            }
+            default -> { }
+        }
+    }
+}
@@ -0,0 +1,362 @@
+package org.example;
+
+import javafx.collections.ListChangeListener;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Estatísticas de adesão (taxa de doses tomadas por dia, semana e mês,
+ * sequências de dias seguidos e doses atrasadas) mantidas como agregados
+ * que são atualizados a cada dose registrada.
+ *
+ * O histórico bruto só é percorrido por inteiro em {@link #recalcular}, que
+ * divide os remédios entre tarefas de fork-join. As doses passam por aqui a
+ * caminho do {@link HistoricoDoses}. O recálculo não segura nenhuma trava
+ * durante a passada, só enquanto lê as doses de um remédio, então marcar uma
+ * dose nunca espera por ele. Uma dose gravada durante o recálculo, num
+ * remédio que ele já leu (ou que não estava no histórico quando ele começou),
+ * é guardada e aplicada aos agregados novos na troca; assim ela nunca é
+ * contada duas vezes nem se perde.
+ */
+public class EstatisticasAdesao {
+
+    private static final int MINUTOS_DIA = 24 * 60;
+    private static final int TOLERANCIA_ATRASO = 60;
+    private static final int REMEDIOS_POR_TAREFA = 64;
+    // Último dia local calculado; as doses de um remédio vêm em ordem, então quase sempre acerta
+    private static volatile DiaLocal ultimoDia = new DiaLocal(0, 0, 0);
+
+    /** Resumo pronto para exibição; as taxas são NaN quando não há doses previstas. */
+    public record Resumo(int tomadasHoje, double esperadasPorDia, double taxaDia, double taxaSemana,
+                         double taxaMes, int atrasadasMes, List<SequenciaRemedio> melhoresSequencias) { }
+
+    public record SequenciaRemedio(String nome, int atual, int melhor) { }
+
+    private record Info(String nome, int intervalo) { }
+
+    // Minutos [inicio, fim) de um dia local, contado em dias desde a época
+    private record DiaLocal(int inicio, int fim, int dia) { }
+
+    // Dose gravada (minuto) ou desfeita durante um recálculo, para repetir nos agregados novos
+    private record Pendente(long id, int minuto, int[] restantes) { }
+
+    private final HistoricoDoses historico;
+    private final Map<Long, Info> infoPorRemedio = new ConcurrentHashMap<>();
+    private volatile Agregados agregados = new Agregados();
+    private volatile double esperadasPorDia;
+    private volatile boolean pronto;
+    // Protege a gravação de doses e a leitura de cada remédio pelo recálculo
+    private final Object trava = new Object();
+    // Do recálculo em andamento (null fora dele); acessados com a trava
+    private Set<Long> idsRecalculo;
+    private Set<Long> lidosRecalculo;
+    private List<Pendente> pendentesRecalculo;
+
+    public EstatisticasAdesao(RepositorioRemedios repositorio, HistoricoDoses historico) {
+        this.historico = historico;
+        repositorio.getRemedios().forEach(this::aoAlterar);
+        repositorio.getRemedios().addListener(this::aoAlterarLista);
+        repositorio.getAlteracoes().adicionar((r, campo, antes) -> {
+            if (campo == Remedio.Campo.NOME || campo == Remedio.Campo.FREQUENCIA) {
+                aoAlterar(r);
+            }
+        });
+    }
+
+    /** Dia local (desde a época) do minuto, pelas regras do fuso atual, inclusive horário de verão. */
+    public static int dia(int minuto) {
+        DiaLocal d = ultimoDia;
+        if (minuto >= d.inicio() && minuto < d.fim()) {
+            return d.dia();
+        }
+        LocalDate data = Instant.ofEpochSecond(minuto * 60L).atZone(ZoneId.systemDefault()).toLocalDate();
+        d = new DiaLocal(HistoricoDoses.minuto(data), HistoricoDoses.minuto(data.plusDays(1)), (int) data.toEpochDay());
+        ultimoDia = d;
+        return d.dia();
+    }
+
+    /** Grava a dose no histórico e atualiza os agregados. */
+    public void registrarDose(long id) throws IOException {
+        synchronized (trava) {
+            int minuto = HistoricoDoses.minutoAtual();
+            historico.registrar(id, minuto);
+            agregados.adicionar(id, minuto, intervalo(id));
+            guardarSeJaLido(new Pendente(id, minuto, null));
+        }
+    }
+
+    /** Desfaz a última dose do remédio no histórico e nos agregados. */
+    public void removerDose(long id) throws IOException {
+        synchronized (trava) {
+            int minuto = historico.removerUltima(id);
+            if (minuto >= 0) {
+                int[] restantes = historico.doses(id, Integer.MIN_VALUE, Integer.MAX_VALUE);
+                agregados.remover(id, minuto, restantes, intervalo(id));
+                guardarSeJaLido(new Pendente(id, minuto, restantes));
+            }
+        }
+    }
+
+    // Com a trava: o recálculo não vai ler mais este remédio, então a dose teria de ser repetida
+    private void guardarSeJaLido(Pendente p) {
+        if (pendentesRecalculo != null && (!idsRecalculo.contains(p.id()) || lidosRecalculo.contains(p.id()))) {
+            pendentesRecalculo.add(p);
+        }
+    }
+
+    /** Refaz todos os agregados a partir do histórico bruto, em paralelo. */
+    public synchronized void recalcular() throws IOException {
+        Diagnostico.Estatisticas evento = new Diagnostico.Estatisticas();
+        long[] ids;
+        synchronized (trava) {
+            ids = historico.comLeituraConsistente(historico::lerRemedios);
+            idsRecalculo = new HashSet<>();
+            for (long id : ids) {
+                idsRecalculo.add(id);
+            }
+            lidosRecalculo = ConcurrentHashMap.newKeySet();
+            pendentesRecalculo = new ArrayList<>();
+        }
+        evento.remedios = ids.length;
+        Agregados novos = null;
+        try {
+            novos = ForkJoinPool.commonPool().invoke(new Recalculo(ids, 0, ids.length));
+        } catch (UncheckedIOException ex) {
+            throw ex.getCause();
+        } finally {
+            synchronized (trava) {
+                if (novos != null) {
+                    for (Pendente p : pendentesRecalculo) {
+                        if (p.restantes() == null) {
+                            novos.adicionar(p.id(), p.minuto(), intervalo(p.id()));
+                        } else {
+                            novos.remover(p.id(), p.minuto(), p.restantes(), intervalo(p.id()));
+                        }
+                    }
+                    agregados = novos;
+                }
+                idsRecalculo = null;
+                lidosRecalculo = null;
+                pendentesRecalculo = null;
+            }
+        }
+        pronto = true;
+        evento.concluir();
+    }
+
+    // Com a trava, para que uma dose gravada agora caia no histórico lido ou nos pendentes, nunca nos dois
+    private int[] lerParaRecalculo(long id) {
+        synchronized (trava) {
+            try {
+                int[] doses = historico.doses(id, Integer.MIN_VALUE, Integer.MAX_VALUE);
+                lidosRecalculo.add(id);
+                return doses;
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }
+    }
+
+    /** Falso até o primeiro {@link #recalcular} terminar. */
+    public boolean isPronto() {
+        return pronto;
+    }
+
+    public Resumo resumo() {
+        int hoje = dia(HistoricoDoses.minutoAtual());
+        Agregados a = agregados;
+        double esperadas = esperadasPorDia;
+
+        int tomadasHoje = a.tomadas(hoje, hoje);
+        int semana = a.tomadas(hoje - 6, hoje);
+        int mes = a.tomadas(hoje - 29, hoje);
+
+        // As 5 maiores sequências atuais, sem ordenar todos os remédios
+        PriorityQueue<SequenciaRemedio> melhores =
+                new PriorityQueue<>(Comparator.comparingInt(SequenciaRemedio::atual));
+        a.paraCadaSequencia((id, s) -> {
+            int atual = s.ultimoDia >= hoje - 1 ? s.atual : 0;
+            Info info = infoPorRemedio.get(id);
+            if (atual > 0 && info != null) {
+                melhores.add(new SequenciaRemedio(info.nome(), atual, s.melhor));
+                if (melhores.size() > 5) {
+                    melhores.poll();
+                }
+            }
+        });
+        List<SequenciaRemedio> lista = new ArrayList<>(melhores);
+        lista.sort(Comparator.comparingInt(SequenciaRemedio::atual).reversed());
+
+        return new Resumo(tomadasHoje, esperadas, taxa(tomadasHoje, esperadas),
+                taxa(semana, esperadas * 7), taxa(mes, esperadas * 30),
+                a.atrasadas(hoje - 29, hoje), lista);
+    }
+
+    private static double taxa(int tomadas, double esperadas) {
+        return esperadas > 0 ? Math.min(1.0, tomadas / esperadas) : Double.NaN;
+    }
+
+    private int intervalo(long id) {
+        Info info = infoPorRemedio.get(id);
+        return info == null ? 0 : info.intervalo();
+    }
+
+    // ---- Doses previstas por dia (thread do JavaFX) ----
+
+    private void aoAlterarLista(ListChangeListener.Change<? extends Remedio> c) {
+        while (c.next()) {
+            if (c.wasPermutated()) {
+                continue;
+            }
+            for (Remedio r : c.getRemoved()) {
+                atualizarInfo(r.getId(), null);
+            }
+            c.getAddedSubList().forEach(this::aoAlterar);
+        }
+    }
+
+    private void aoAlterar(Remedio r) {
+        Duration intervalo = AgendadorDoses.intervalo(r.getFrequencia());
+        atualizarInfo(r.getId(), new Info(r.getNome(), intervalo == null ? 0 : (int) intervalo.toMinutes()));
+    }
+
+    private void atualizarInfo(long id, Info nova) {
+        Info antiga = nova == null ? infoPorRemedio.remove(id) : infoPorRemedio.put(id, nova);
+        double delta = porDia(nova) - porDia(antiga);
+        esperadasPorDia += delta;
+    }
+
+    private static double porDia(Info info) {
+        return info == null || info.intervalo() == 0 ? 0 : (double) MINUTOS_DIA / info.intervalo();
+    }
+
+    // ---- Agregados ----
+
+    /** Sequência de dias seguidos com ao menos uma dose, e as doses atrasadas de um remédio. */
+    private static class Sequencia {
+        int ultimoMinuto = Integer.MIN_VALUE;
+        int ultimoDia = Integer.MIN_VALUE;
+        int atual;
+        int melhor;
+
+        // Devolve true se a dose chegou depois do horário previsto (mais a tolerância)
+        boolean adicionar(int minuto, int intervalo) {
+            boolean atrasada = intervalo > 0 && ultimoMinuto != Integer.MIN_VALUE
+                    && minuto > ultimoMinuto + intervalo + TOLERANCIA_ATRASO;
+            int d = dia(minuto);
+            if (d == ultimoDia + 1) {
+                atual++;
+            } else if (d != ultimoDia) {
+                atual = 1;
+            }
+            melhor = Math.max(melhor, atual);
+            ultimoDia = d;
+            ultimoMinuto = minuto;
+            return atrasada;
+        }
+    }
+
+    private static class Agregados {
+        // dia -> {tomadas, atrasadas}
+        private final Map<Integer, int[]> porDia = new HashMap<>();
+        private final Map<Long, Sequencia> porRemedio = new HashMap<>();
+
+        synchronized void adicionar(long id, int minuto, int intervalo) {
+            boolean atrasada = porRemedio.computeIfAbsent(id, k -> new Sequencia()).adicionar(minuto, intervalo);
+            int[] contagem = porDia.computeIfAbsent(dia(minuto), k -> new int[2]);
+            contagem[0]++;
+            if (atrasada) {
+                contagem[1]++;
+            }
+        }
+
+        // A sequência do remédio é refeita a partir das doses que sobraram
+        synchronized void remover(long id, int minuto, int[] restantes, int intervalo) {
+            Sequencia s = new Sequencia();
+            for (int m : restantes) {
+                s.adicionar(m, intervalo);
+            }
+            boolean eraAtrasada = intervalo > 0 && s.ultimoMinuto != Integer.MIN_VALUE
+                    && minuto > s.ultimoMinuto + intervalo + TOLERANCIA_ATRASO;
+            porRemedio.put(id, s);
+            int[] contagem = porDia.get(dia(minuto));
+            if (contagem != null) {
+                contagem[0]--;
+                if (eraAtrasada) {
+                    contagem[1]--;
+                }
+            }
+        }
+
+        synchronized int tomadas(int de, int ate) {
+            return somar(de, ate, 0);
+        }
+
+        synchronized int atrasadas(int de, int ate) {
+            return somar(de, ate, 1);
+        }
+
+        private int somar(int de, int ate, int coluna) {
+            int total = 0;
+            for (int d = de; d <= ate; d++) {
+                int[] contagem = porDia.get(d);
+                if (contagem != null) {
+                    total += contagem[coluna];
+                }
+            }
+            return total;
+        }
+
+        synchronized void paraCadaSequencia(java.util.function.BiConsumer<Long, Sequencia> acao) {
+            porRemedio.forEach(acao);
+        }
+
+        void mesclar(Agregados outro) {
+            outro.porDia.forEach((d, c) -> porDia.merge(d, c, (x, y) -> new int[]{x[0] + y[0], x[1] + y[1]}));
+            porRemedio.putAll(outro.porRemedio);
+        }
+    }
+
+    private class Recalculo extends RecursiveTask<Agregados> {
+        private static final long serialVersionUID = 1L;
+
+        private final long[] ids;
+        private final int de, ate;
+
+        Recalculo(long[] ids, int de, int ate) {
+            this.ids = ids;
+            this.de = de;
+            this.ate = ate;
+        }
+
+        @Override
+        protected Agregados compute() {
+            if (ate - de <= REMEDIOS_POR_TAREFA) {
+                Agregados parcial = new Agregados();
+                for (int i = de; i < ate; i++) {
+                    int intervalo = intervalo(ids[i]);
+                    for (int minuto : lerParaRecalculo(ids[i])) {
+                        parcial.adicionar(ids[i], minuto, intervalo);
+                    }
+                }
+                return parcial;
+            }
+            int meio = (de + ate) >>> 1;
+            Recalculo esquerda = new Recalculo(ids, de, meio);
+            esquerda.fork();
+            Agregados direita = new Recalculo(ids, meio, ate).compute();
+            Agregados resultado = esquerda.join();
+            resultado.mesclar(direita);
+            return resultado;
+        }
+    }
+}
@@ -0,0 +1,213 @@
+package org.example;
+
+import com.google.gson.stream.JsonWriter;
+import javafx.concurrent.Task;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Exporta uma cópia da lista de remédios em segundo plano, em JSON, NDJSON
+ * ou CSV, com ou sem gzip.
+ *
+ * A cópia é feita na thread da lista ({@link NucleoRemedios#copiarLista()}); daí
+ * em diante a lista pode continuar sendo alterada. Os remédios são
+ * serializados em blocos por um grupo de threads e gravados na ordem por
+ * esta tarefa, com no máximo alguns blocos prontos em memória de cada vez.
+ * A gravação vai para um arquivo temporário, que só substitui o destino no
+ * fim; cancelada ou com falha, a exportação não deixa arquivo pela metade.
+ * Os remédios saem na ordem da tabela ({@link RepositorioRemedios#POR_ORDEM}).
+ */
+public class ExportadorRemedios extends Task<Long> {
+
+    private static final int TAMANHO_BLOCO = 4_096;
+
+    public enum Formato {
+        JSON(".json"), NDJSON(".ndjson"), CSV(".csv");
+
+        private final String extensao;
+
+        Formato(String extensao) {
+            this.extensao = extensao;
+        }
+
+        public String getExtensao() {
+            return extensao;
+        }
+
+        /** Formato pela extensão do arquivo, ignorando um ".gz" final; JSON se não reconhecer. */
+        public static Formato deArquivo(Path arquivo) {
+            String nome = semGzip(arquivo);
+            if (nome.endsWith(".ndjson") || nome.endsWith(".jsonl")) {
+                return NDJSON;
+            }
+            return nome.endsWith(".csv") ? CSV : JSON;
+        }
+    }
+
+    private final List<Remedio> copia;
+    private final Path arquivo;
+    private final Formato formato;
+    private final boolean gzip;
+    private final int threads;
+    private final RemedioTypeAdapter adaptador = new RemedioTypeAdapter();
+
+    /**
+     * @param copia remédios que ninguém mais altera (uma cópia da lista)
+     * @param gzip comprime a saída; normalmente quando o nome termina em ".gz"
+     */
+    public ExportadorRemedios(List<Remedio> copia, Path arquivo, Formato formato, boolean gzip) {
+        this.copia = copia;
+        this.arquivo = arquivo;
+        this.formato = formato;
+        this.gzip = gzip;
+        this.threads = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+    }
+
+    public static boolean isGzip(Path arquivo) {
+        return arquivo.getFileName().toString().toLowerCase(Locale.ROOT).endsWith(".gz");
+    }
+
+    private static String semGzip(Path arquivo) {
+        String nome = arquivo.getFileName().toString().toLowerCase(Locale.ROOT);
+        return nome.endsWith(".gz") ? nome.substring(0, nome.length() - 3) : nome;
+    }
+
+    @Override
+    protected Long call() throws IOException {
+        Diagnostico.Gravacao evento = new Diagnostico.Gravacao("exportação " + formato.name().toLowerCase(Locale.ROOT)
+                + (gzip ? ".gz" : ""));
+        Path temporario = Path.of(arquivo + ".tmp");
+        ExecutorService trabalhadores = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "exportacao-trabalhador");
+            t.setDaemon(true);
+            return t;
+        });
+        copia.sort(RepositorioRemedios.POR_ORDEM);
+        try {
+            try (OutputStream arquivoSaida = new BufferedOutputStream(Files.newOutputStream(temporario), 1 << 16);
+                 OutputStream saida = gzip ? new GZIPOutputStream(arquivoSaida, 1 << 16) : arquivoSaida) {
+                gravar(saida, trabalhadores);
+            }
+            Files.move(temporario, arquivo, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException | RuntimeException ex) {
+            Files.deleteIfExists(temporario);
+            throw ex;
+        } finally {
+            trabalhadores.shutdownNow();
+        }
+        evento.bytes = Files.size(arquivo);
+        evento.concluir();
+        return (long) copia.size();
+    }
+
+    // Os blocos são serializados em paralelo e gravados na ordem; a fila de
+    // blocos em andamento é limitada, então a memória não cresce com a lista
+    private void gravar(OutputStream saida, ExecutorService trabalhadores) throws IOException {
+        Deque<Future<byte[]>> emAndamento = new ArrayDeque<>();
+        int total = copia.size();
+        int gravados = 0;
+        saida.write(cabecalho());
+        for (int inicio = 0; inicio < total || !emAndamento.isEmpty(); ) {
+            if (inicio < total && emAndamento.size() < threads * 2) {
+                int de = inicio, ate = Math.min(total, inicio + TAMANHO_BLOCO);
+                emAndamento.add(trabalhadores.submit(() -> serializar(de, ate)));
+                inicio = ate;
+                continue;
+            }
+            if (isCancelled()) {
+                throw new CancellationException();
+            }
+            byte[] bloco = esperar(emAndamento.poll());
+            if (formato == Formato.JSON && gravados > 0) {
+                saida.write(",\n".getBytes(StandardCharsets.UTF_8));
+            }
+            saida.write(bloco);
+            gravados = Math.min(total, gravados + TAMANHO_BLOCO);
+            updateProgress(gravados, total);
+            updateMessage(gravados + " de " + total + " remédios exportados");
+        }
+        saida.write(rodape(total));
+    }
+
+    private static byte[] esperar(Future<byte[]> bloco) throws IOException {
+        try {
+            return bloco.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException();
+        } catch (ExecutionException ex) {
+            throw ex.getCause() instanceof IOException io ? io : new IOException(ex.getCause());
+        }
+    }
+
+    private byte[] cabecalho() {
+        String texto = switch (formato) {
+            case JSON -> "[\n";
+            case NDJSON -> "";
+            case CSV -> "id,nome,observacoes,dosagem,frequencia,tomado,dataHoraTomado\r\n";
+        };
+        return texto.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private byte[] rodape(int total) {
+        return (formato == Formato.JSON ? (total > 0 ? "\n]\n" : "]\n") : "").getBytes(StandardCharsets.UTF_8);
+    }
+
+    private byte[] serializar(int de, int ate) throws IOException {
+        StringWriter texto = new StringWriter((ate - de) * 128);
+        StringBuffer b = texto.getBuffer();
+        for (int i = de; i < ate; i++) {
+            Remedio r = copia.get(i);
+            switch (formato) {
+                case JSON, NDJSON -> {
+                    if (formato == Formato.JSON && i > de) {
+                        b.append(",\n");
+                    }
+                    // Um JsonWriter por remédio, escrevendo direto no texto do bloco
+                    JsonWriter w = new JsonWriter(texto);
+                    adaptador.write(w, r);
+                    w.flush();
+                    if (formato == Formato.NDJSON) {
+                        b.append('\n');
+                    }
+                }
+                case CSV -> b.append(r.getId()).append(',')
+                        .append(csv(r.getNome())).append(',')
+                        .append(csv(r.getObservacoes())).append(',')
+                        .append(csv(r.getDosagem())).append(',')
+                        .append(csv(r.getFrequencia())).append(',')
+                        .append(r.isTomado()).append(',')
+                        .append(csv(r.getDataHoraTomado())).append("\r\n");
+            }
+        }
+        return texto.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    // RFC 4180: aspas em volta quando há separador, aspas ou quebra de linha
+    private static String csv(String valor) {
+        if (valor == null) {
+            return "";
+        }
+        if (valor.indexOf(',') < 0 && valor.indexOf('"') < 0 && valor.indexOf('\n') < 0 && valor.indexOf('\r') < 0) {
+            return valor;
+        }
+        return '"' + valor.replace("\"", "\"\"") + '"';
+    }
+}
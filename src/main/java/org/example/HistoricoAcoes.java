@@ -0,0 +1,168 @@
+package org.example;
+
+import javafx.collections.ObservableListBase;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.function.Consumer;
+
+/**
+ * Histórico de ações com capacidade fixa em memória.
+ *
+ * As entradas ficam num buffer circular exposto como lista observável, para
+ * ser mostrado numa ListView virtualizada; quando o buffer enche, a entrada
+ * mais antiga sai. Todas as entradas também são gravadas, em segundo plano,
+ * num arquivo de log que é rotacionado ao atingir {@link #TAMANHO_MAXIMO_ARQUIVO},
+ * mantendo no máximo {@link #ARQUIVOS_ANTIGOS} arquivos anteriores.
+ */
+public class HistoricoAcoes extends ObservableListBase<String> {
+
+    private static final int CAPACIDADE = 1_000;
+    private static final long TAMANHO_MAXIMO_ARQUIVO = 1024 * 1024;
+    private static final int ARQUIVOS_ANTIGOS = 4;
+    private static final DateTimeFormatter FORMATO_TELA = DateTimeFormatter.ofPattern("HH:mm:ss");
+    private static final DateTimeFormatter FORMATO_ARQUIVO = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    private static final String FIM = new String("fim");
+
+    private final String[] buffer = new String[CAPACIDADE];
+    private int inicio;
+    private int tamanho;
+
+    private final Path arquivo;
+    private final Consumer<String> aoFalhar;
+    private final BlockingQueue<String> fila = new LinkedBlockingQueue<>();
+    private final Thread escritor;
+
+    /** @param aoFalhar recebe as falhas de gravação do arquivo, chamado na thread do escritor */
+    public HistoricoAcoes(Path arquivo, Consumer<String> aoFalhar) {
+        this.arquivo = arquivo;
+        this.aoFalhar = aoFalhar;
+        this.escritor = new Thread(this::loopEscrita, "historico-escritor");
+        this.escritor.setDaemon(true);
+        this.escritor.start();
+    }
+
+    /** Registra uma ação; deve ser chamado na thread do JavaFX. */
+    public void registrar(String mensagem) {
+        LocalDateTime agora = LocalDateTime.now();
+        String entrada = "[" + agora.format(FORMATO_TELA) + "] " + mensagem;
+        fila.add(agora.format(FORMATO_ARQUIVO) + " " + mensagem);
+
+        beginChange();
+        if (tamanho == CAPACIDADE) {
+            String antiga = buffer[inicio];
+            buffer[inicio] = null;
+            inicio = (inicio + 1) % CAPACIDADE;
+            tamanho--;
+            nextRemove(0, antiga);
+        }
+        buffer[(inicio + tamanho) % CAPACIDADE] = entrada;
+        tamanho++;
+        nextAdd(tamanho - 1, tamanho);
+        endChange();
+    }
+
+    @Override
+    public String get(int index) {
+        if (index < 0 || index >= tamanho) {
+            throw new IndexOutOfBoundsException(index);
+        }
+        return buffer[(inicio + index) % CAPACIDADE];
+    }
+
+    @Override
+    public int size() {
+        return tamanho;
+    }
+
+    /** Grava o que estiver na fila e fecha o arquivo. */
+    public void fechar() {
+        fila.add(FIM);
+        try {
+            escritor.join(5_000);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void loopEscrita() {
+        List<String> lote = new ArrayList<>();
+        BufferedWriter saida = null;
+        boolean fim = false;
+        while (!fim) {
+            try {
+                lote.add(fila.take());
+            } catch (InterruptedException ex) {
+                return;
+            }
+            fila.drainTo(lote);
+            try {
+                if (saida == null) {
+                    saida = abrir();
+                }
+                for (String linha : lote) {
+                    if (linha == FIM) {
+                        fim = true;
+                    } else {
+                        saida.write(linha);
+                        saida.newLine();
+                    }
+                }
+                saida.flush();
+                if (fim) {
+                    saida.close();
+                } else if (Files.size(arquivo) >= TAMANHO_MAXIMO_ARQUIVO) {
+                    saida.close();
+                    saida = null;
+                    rotacionar();
+                }
+            } catch (IOException ex) {
+                // O histórico em disco é auxiliar; uma falha descarta o lote sem afetar o programa,
+                // e o próximo lote reabre o arquivo
+                aoFalhar.accept("Falha ao gravar histórico: " + ex.getMessage());
+                fecharQuieto(saida);
+                saida = null;
+                fim = fim || lote.stream().anyMatch(linha -> linha == FIM);
+            }
+            lote.clear();
+        }
+    }
+
+    private static void fecharQuieto(BufferedWriter saida) {
+        if (saida != null) {
+            try {
+                saida.close();
+            } catch (IOException ex) {
+                // O lote já foi dado como perdido; basta liberar o arquivo
+            }
+        }
+    }
+
+    private BufferedWriter abrir() throws IOException {
+        return Files.newBufferedWriter(arquivo, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+
+    // historico.log -> historico.log.1 -> ... -> historico.log.N (o mais antigo é descartado)
+    private void rotacionar() throws IOException {
+        Files.deleteIfExists(Path.of(arquivo + "." + ARQUIVOS_ANTIGOS));
+        for (int i = ARQUIVOS_ANTIGOS - 1; i >= 1; i--) {
+            Path origem = Path.of(arquivo + "." + i);
+            if (Files.exists(origem)) {
+                Files.move(origem, Path.of(arquivo + "." + (i + 1)), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        Files.move(arquivo, Path.of(arquivo + "." + 1), StandardCopyOption.REPLACE_EXISTING);
+    }
+}
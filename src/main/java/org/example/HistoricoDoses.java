@@ -0,0 +1,334 @@
+package org.example;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.temporal.TemporalAdjusters;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Histórico de doses tomadas, guardado como minutos desde a época (int) num
+ * arquivo mapeado em memória.
+ *
+ * O arquivo é dividido em blocos de {@value #TAMANHO_BLOCO} bytes. Cada bloco
+ * pertence a um remédio e guarda, depois de um cabeçalho pequeno, uma coluna
+ * de até {@value #DOSES_POR_BLOCO} minutos em ordem crescente. Um remédio com
+ * muitas doses ocupa vários blocos; na abertura só os cabeçalhos são lidos
+ * para montar o índice de blocos de cada remédio, e as doses só são lidas
+ * quando consultadas.
+ *
+ * <pre>
+ * bloco 0:  int MAGICO, int VERSAO, int totalBlocos
+ * bloco n:  long idRemedio, int quantidade, int reservado, int[DOSES_POR_BLOCO] minutos
+ * </pre>
+ */
+public class HistoricoDoses {
+
+    private static final int MAGICO = 0x444F5345; // "DOSE"
+    private static final int VERSAO = 1;
+    private static final int TAMANHO_BLOCO = 256;
+    private static final int CABECALHO_BLOCO = 16;
+    private static final int DOSES_POR_BLOCO = (TAMANHO_BLOCO - CABECALHO_BLOCO) / Integer.BYTES;
+    private static final int BLOCOS_POR_CRESCIMENTO = 4_096;
+
+    private final Path arquivo;
+    private final Consumer<String> aoFalhar;
+    private volatile FileChannel canal;
+    private MappedByteBuffer mapa;
+    private int totalBlocos;
+    private final Map<Long, int[]> blocosPorRemedio = new HashMap<>();
+    private final ReentrantReadWriteLock trava = new ReentrantReadWriteLock();
+
+    /** @param aoFalhar recebe as falhas que não têm a quem ser devolvidas, como ao fechar */
+    public HistoricoDoses(Path arquivo, Consumer<String> aoFalhar) {
+        this.arquivo = arquivo;
+        this.aoFalhar = aoFalhar;
+    }
+
+    public static int minutoAtual() {
+        return (int) (System.currentTimeMillis() / 60_000);
+    }
+
+    public static int minuto(LocalDate dia) {
+        return (int) (dia.atStartOfDay(ZoneId.systemDefault()).toEpochSecond() / 60);
+    }
+
+    /** Abre o arquivo e lê os cabeçalhos dos blocos; os demais métodos chamam isto se preciso. */
+    public void abrir() throws IOException {
+        if (canal != null) {
+            return;
+        }
+        trava.writeLock().lock();
+        try {
+            abrirSemTrava();
+        } finally {
+            trava.writeLock().unlock();
+        }
+    }
+
+    private void abrirSemTrava() throws IOException {
+        if (canal != null) {
+            return;
+        }
+        // Os campos só recebem o arquivo depois de validado; um arquivo inválido
+        // fica fechado, e a próxima chamada tenta de novo
+        FileChannel novo = FileChannel.open(arquivo, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            MappedByteBuffer m;
+            if (novo.size() == 0) {
+                m = novo.map(FileChannel.MapMode.READ_WRITE, 0, (long) BLOCOS_POR_CRESCIMENTO * TAMANHO_BLOCO);
+                m.putInt(0, MAGICO);
+                m.putInt(4, VERSAO);
+                m.putInt(8, 1);
+            } else {
+                m = novo.map(FileChannel.MapMode.READ_WRITE, 0, novo.size() / TAMANHO_BLOCO * TAMANHO_BLOCO);
+            }
+            int total = m.capacity() < TAMANHO_BLOCO ? 0 : m.getInt(8);
+            if (total < 1 || m.getInt(0) != MAGICO || m.getInt(4) != VERSAO
+                    || (long) total * TAMANHO_BLOCO > m.capacity()) {
+                throw new IOException("arquivo de histórico de doses inválido: " + arquivo);
+            }
+            mapa = m;
+            totalBlocos = total;
+            for (int b = 1; b < totalBlocos; b++) {
+                anexarBloco(mapa.getLong(b * TAMANHO_BLOCO), b);
+            }
+            canal = novo;
+        } catch (IOException | RuntimeException ex) {
+            mapa = null;
+            totalBlocos = 0;
+            blocosPorRemedio.clear();
+            try {
+                novo.close();
+            } catch (IOException aoFechar) {
+                ex.addSuppressed(aoFechar);
+            }
+            throw ex;
+        }
+    }
+
+    /** Registra uma dose do remédio no minuto informado. */
+    public void registrar(long idRemedio, int minuto) throws IOException {
+        trava.writeLock().lock();
+        try {
+            abrirSemTrava();
+            anexarDose(idRemedio, minuto);
+        } finally {
+            trava.writeLock().unlock();
+        }
+    }
+
+    private void anexarDose(long idRemedio, int minuto) throws IOException {
+        int[] blocos = blocosPorRemedio.get(idRemedio);
+        int bloco = blocos == null ? -1 : blocos[blocos[0]];
+        if (bloco < 0 || quantidade(bloco) == DOSES_POR_BLOCO) {
+            bloco = novoBloco(idRemedio);
+        }
+        int n = quantidade(bloco);
+        mapa.putInt(posicaoDose(bloco, n), minuto);
+        // A quantidade é gravada por último, para que uma dose pela metade não conte
+        mapa.putInt(bloco * TAMANHO_BLOCO + 8, n + 1);
+    }
+
+    /**
+     * Desfaz a última dose registrada do remédio (usado quando ele é desmarcado).
+     * Devolve o minuto removido, ou -1 se não havia dose.
+     */
+    public int removerUltima(long idRemedio) throws IOException {
+        trava.writeLock().lock();
+        try {
+            abrirSemTrava();
+            int[] blocos = blocosPorRemedio.get(idRemedio);
+            for (int i = blocos == null ? 0 : blocos[0]; i >= 1; i--) {
+                int n = quantidade(blocos[i]);
+                if (n > 0) {
+                    mapa.putInt(blocos[i] * TAMANHO_BLOCO + 8, n - 1);
+                    return mapa.getInt(posicaoDose(blocos[i], n - 1));
+                }
+            }
+            return -1;
+        } finally {
+            trava.writeLock().unlock();
+        }
+    }
+
+    /** Se {@link #abrir()} já foi concluído. */
+    public boolean isAberto() {
+        return canal != null;
+    }
+
+    /** Minuto da última dose registrada do remédio, ou -1 se não há nenhuma. */
+    public int ultimaDose(long idRemedio) throws IOException {
+        abrir();
+        trava.readLock().lock();
+        try {
+            int[] blocos = blocosPorRemedio.get(idRemedio);
+            for (int i = blocos == null ? 0 : blocos[0]; i >= 1; i--) {
+                int n = quantidade(blocos[i]);
+                if (n > 0) {
+                    return mapa.getInt(posicaoDose(blocos[i], n - 1));
+                }
+            }
+            return -1;
+        } finally {
+            trava.readLock().unlock();
+        }
+    }
+
+    /** Minutos das doses do remédio no intervalo [de, ate), em ordem. */
+    public int[] doses(long idRemedio, int de, int ate) throws IOException {
+        abrir();
+        trava.readLock().lock();
+        try {
+            return lerDoses(idRemedio, de, ate);
+        } finally {
+            trava.readLock().unlock();
+        }
+    }
+
+    /**
+     * Executa uma leitura longa (por exemplo, um recálculo em paralelo) sem que
+     * novas doses sejam gravadas no meio dela. Dentro da leitura, use
+     * {@link #lerDoses} e {@link #lerRemedios}, que não tomam a trava; assim
+     * as threads auxiliares não disputam a trava com quem está esperando para gravar.
+     */
+    public <T> T comLeituraConsistente(Supplier<T> leitura) throws IOException {
+        abrir();
+        trava.readLock().lock();
+        try {
+            return leitura.get();
+        } finally {
+            trava.readLock().unlock();
+        }
+    }
+
+    /** Ids dos remédios com histórico; só use dentro de {@link #comLeituraConsistente}. */
+    long[] lerRemedios() {
+        return blocosPorRemedio.keySet().stream().mapToLong(Long::longValue).toArray();
+    }
+
+    /** Como {@link #doses}, mas sem trava; só use dentro de {@link #comLeituraConsistente}. */
+    int[] lerDoses(long idRemedio, int de, int ate) {
+        int[] blocos = blocosPorRemedio.get(idRemedio);
+        if (blocos == null) {
+            return new int[0];
+        }
+        int[] resultado = new int[16];
+        int total = 0;
+        for (int i = 1; i <= blocos[0]; i++) {
+            int bloco = blocos[i];
+            int n = quantidade(bloco);
+            if (n == 0 || mapa.getInt(posicaoDose(bloco, n - 1)) < de) {
+                continue;
+            }
+            if (mapa.getInt(posicaoDose(bloco, 0)) >= ate) {
+                break;
+            }
+            for (int j = primeiroNaoMenor(bloco, n, de); j < n; j++) {
+                int m = mapa.getInt(posicaoDose(bloco, j));
+                if (m >= ate) {
+                    break;
+                }
+                if (total == resultado.length) {
+                    resultado = Arrays.copyOf(resultado, total * 2);
+                }
+                resultado[total++] = m;
+            }
+        }
+        return Arrays.copyOf(resultado, total);
+    }
+
+    public int[] dosesNoDia(long idRemedio, LocalDate dia) throws IOException {
+        return doses(idRemedio, minuto(dia), minuto(dia.plusDays(1)));
+    }
+
+    /** Doses da semana (segunda a domingo) que contém o dia informado. */
+    public int[] dosesNaSemana(long idRemedio, LocalDate dia) throws IOException {
+        LocalDate segunda = dia.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY));
+        return doses(idRemedio, minuto(segunda), minuto(segunda.plusWeeks(1)));
+    }
+
+    public void fechar() {
+        trava.writeLock().lock();
+        try {
+            if (canal == null) {
+                return;
+            }
+            mapa.force();
+            canal.close();
+        } catch (IOException ex) {
+            aoFalhar.accept("Falha ao fechar histórico de doses: " + ex.getMessage());
+        } finally {
+            canal = null;
+            mapa = null;
+            trava.writeLock().unlock();
+        }
+    }
+
+    // ---- Blocos ----
+
+    private int quantidade(int bloco) {
+        return mapa.getInt(bloco * TAMANHO_BLOCO + 8);
+    }
+
+    private static int posicaoDose(int bloco, int i) {
+        return bloco * TAMANHO_BLOCO + CABECALHO_BLOCO + i * Integer.BYTES;
+    }
+
+    // Busca binária dentro da coluna de minutos do bloco
+    private int primeiroNaoMenor(int bloco, int n, int minuto) {
+        int lo = 0, hi = n;
+        while (lo < hi) {
+            int meio = (lo + hi) >>> 1;
+            if (mapa.getInt(posicaoDose(bloco, meio)) < minuto) {
+                lo = meio + 1;
+            } else {
+                hi = meio;
+            }
+        }
+        return lo;
+    }
+
+    private int novoBloco(long idRemedio) throws IOException {
+        if ((long) (totalBlocos + 1) * TAMANHO_BLOCO > mapa.capacity()) {
+            mapear(totalBlocos + BLOCOS_POR_CRESCIMENTO);
+        }
+        int bloco = totalBlocos++;
+        int base = bloco * TAMANHO_BLOCO;
+        mapa.putLong(base, idRemedio);
+        mapa.putInt(base + 8, 0);
+        mapa.putInt(8, totalBlocos);
+        anexarBloco(idRemedio, bloco);
+        return bloco;
+    }
+
+    // Lista de blocos por remédio; a posição 0 guarda quantos blocos há
+    private void anexarBloco(long idRemedio, int bloco) {
+        int[] blocos = blocosPorRemedio.get(idRemedio);
+        if (blocos == null) {
+            blocos = new int[4];
+        } else if (blocos[0] + 1 == blocos.length) {
+            blocos = Arrays.copyOf(blocos, blocos.length * 2);
+        }
+        blocos[++blocos[0]] = bloco;
+        blocosPorRemedio.put(idRemedio, blocos);
+    }
+
+    private void mapear(int blocos) throws IOException {
+        if (mapa != null) {
+            mapa.force();
+        }
+        mapa = canal.map(FileChannel.MapMode.READ_WRITE, 0, (long) blocos * TAMANHO_BLOCO);
+    }
+}
@@ -0,0 +1,35 @@
+package org.example;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Quantos remédios usam cada nome, pela chave de {@link RepositorioRemedios#chave}.
+ *
+ * É a regra de nomes únicos da lista: o {@link RepositorioRemedios} consulta
+ * este índice ao adicionar, editar e importar, e o {@link ProcessadorLote}
+ * usa o mesmo para descartar duplicados sem manter os remédios em memória.
+ */
+public class IndiceNomes {
+
+    private final Map<String, Integer> contagem = new HashMap<>();
+
+    public boolean existe(String nome) {
+        return contagem.containsKey(RepositorioRemedios.chave(nome));
+    }
+
+    /** Se um remédio chamado {@code atual} pode passar a se chamar {@code nome} sem colidir com outro. */
+    public boolean disponivel(String nome, String atual) {
+        String chave = RepositorioRemedios.chave(nome);
+        Integer n = contagem.get(chave);
+        return n == null || (n == 1 && RepositorioRemedios.chave(atual).equals(chave));
+    }
+
+    public void incluir(String nome) {
+        contagem.merge(RepositorioRemedios.chave(nome), 1, Integer::sum);
+    }
+
+    public void retirar(String nome) {
+        contagem.computeIfPresent(RepositorioRemedios.chave(nome), (k, n) -> n == 1 ? null : n - 1);
+    }
+}
@@ -0,0 +1,257 @@
+package org.example;
+
+import javafx.collections.ListChangeListener;
+
+import java.text.Normalizer;
+import java.util.*;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Pattern;
+
+/**
+ * Índice de pesquisa por nome e observações, mantido em sincronia com a lista.
+ *
+ * Cada remédio ocupa uma posição ("slot") com o texto já normalizado (sem
+ * maiúsculas nem acentos). Um índice de trigramas aponta para os slots que
+ * contêm cada trigrama; a consulta percorre só a menor lista de slots entre
+ * os trigramas dela e confirma cada candidato com {@code contains}. Entradas
+ * antigas do índice (de remédios editados ou removidos) são descartadas nessa
+ * confirmação e limpas de tempos em tempos com uma reconstrução.
+ *
+ * As alterações chegam pela thread do JavaFX; {@link #pesquisar} pode ser
+ * chamado de qualquer thread.
+ */
+public class IndicePesquisa {
+
+    private static final Pattern ACENTOS = Pattern.compile("\\p{M}+");
+
+    private final ReentrantReadWriteLock trava = new ReentrantReadWriteLock();
+    private final Map<Long, int[]> postagens = new HashMap<>();
+    private final Map<Remedio, Integer> slots = new IdentityHashMap<>();
+    private Remedio[] remedios = new Remedio[1024];
+    private String[] textos = new String[1024];
+    private int proximoSlot;
+    private int obsoletos;
+    private long versao;
+
+    // Última consulta, para restringir a próxima quando o texto só cresce
+    private record Consulta(String texto, long versao, int[] slots) { }
+    private volatile Consulta ultima;
+
+    private Runnable aoAlterar = () -> { };
+
+    private final RepositorioRemedios repositorio;
+    private final ListChangeListener<Remedio> ouvinteLista = this::aoAlterarLista;
+    private final AlteracoesRemedios.Ouvinte ouvinteCampos = (r, campo, antes) -> {
+        if (campo == Remedio.Campo.NOME || campo == Remedio.Campo.OBSERVACOES) {
+            aoAlterarTexto(r);
+        }
+    };
+
+    public IndicePesquisa(RepositorioRemedios repositorio) {
+        this.repositorio = repositorio;
+        repositorio.getRemedios().forEach(this::indexar);
+        repositorio.getRemedios().addListener(ouvinteLista);
+        repositorio.getAlteracoes().adicionar(ouvinteCampos);
+    }
+
+    /** Para de acompanhar a lista (ao trocar de paciente). */
+    public void desligar() {
+        repositorio.getRemedios().removeListener(ouvinteLista);
+        repositorio.getAlteracoes().remover(ouvinteCampos);
+    }
+
+    /** Chamado na thread do JavaFX sempre que o conteúdo indexado muda. */
+    public void setAoAlterar(Runnable aoAlterar) {
+        this.aoAlterar = aoAlterar;
+    }
+
+    public static String normalizar(String texto) {
+        if (texto == null) {
+            return "";
+        }
+        boolean ascii = true;
+        for (int i = 0; i < texto.length() && ascii; i++) {
+            ascii = texto.charAt(i) < 0x80;
+        }
+        if (!ascii) {
+            texto = ACENTOS.matcher(Normalizer.normalize(texto, Normalizer.Form.NFD)).replaceAll("");
+        }
+        return texto.toLowerCase(Locale.ROOT);
+    }
+
+    /** Remédios cujo nome ou observações contêm a consulta, ignorando maiúsculas e acentos. */
+    public Set<Remedio> pesquisar(String consulta) {
+        Diagnostico.Pesquisa evento = new Diagnostico.Pesquisa(consulta);
+        String q = normalizar(consulta);
+        trava.readLock().lock();
+        try {
+            Consulta anterior = ultima;
+            int[] candidatos;
+            int total;
+            if (anterior != null && anterior.versao() == versao && q.contains(anterior.texto())) {
+                candidatos = anterior.slots();
+                total = candidatos.length;
+            } else if (q.length() >= 3) {
+                candidatos = menorPostagem(q);
+                total = candidatos == null ? 0 : candidatos[0];
+                if (candidatos != null) {
+                    candidatos = Arrays.copyOfRange(candidatos, 1, total + 1);
+                }
+            } else {
+                candidatos = null;
+                total = proximoSlot;
+            }
+
+            BitSet encontrados = new BitSet(proximoSlot);
+            for (int i = 0; i < total; i++) {
+                int slot = candidatos == null ? i : candidatos[i];
+                String texto = textos[slot];
+                if (texto != null && texto.contains(q)) {
+                    encontrados.set(slot);
+                }
+            }
+
+            Set<Remedio> resultado = Collections.newSetFromMap(new IdentityHashMap<>());
+            int[] slotsEncontrados = encontrados.stream().toArray();
+            for (int slot : slotsEncontrados) {
+                resultado.add(remedios[slot]);
+            }
+            ultima = new Consulta(q, versao, slotsEncontrados);
+            evento.encontrados = resultado.size();
+            evento.concluir();
+            return resultado;
+        } finally {
+            trava.readLock().unlock();
+        }
+    }
+
+    // Lista de slots do trigrama mais raro da consulta (posição 0 guarda o tamanho)
+    private int[] menorPostagem(String q) {
+        int[] menor = null;
+        for (int i = 0; i + 3 <= q.length(); i++) {
+            int[] p = postagens.get(trigrama(q, i));
+            if (p == null) {
+                return null;
+            }
+            if (menor == null || p[0] < menor[0]) {
+                menor = p;
+            }
+        }
+        return menor;
+    }
+
+    private static long trigrama(String s, int i) {
+        return ((long) s.charAt(i) << 32) | ((long) s.charAt(i + 1) << 16) | s.charAt(i + 2);
+    }
+
+    // ---- Manutenção (thread do JavaFX) ----
+
+    // Reordenações e atualizações (uma marcação de tomado, por exemplo) não mudam o
+    // que é pesquisado, então não refazem a pesquisa
+    private void aoAlterarLista(ListChangeListener.Change<? extends Remedio> c) {
+        boolean alterou = false;
+        trava.writeLock().lock();
+        try {
+            while (c.next()) {
+                if (c.wasPermutated() || c.wasUpdated()) {
+                    continue;
+                }
+                for (Remedio r : c.getRemoved()) {
+                    liberar(r);
+                }
+                for (Remedio r : c.getAddedSubList()) {
+                    indexar(r);
+                }
+                alterou |= c.wasRemoved() || c.wasAdded();
+            }
+            reconstruirSeNecessario();
+        } finally {
+            trava.writeLock().unlock();
+        }
+        if (alterou) {
+            aoAlterar.run();
+        }
+    }
+
+    private void aoAlterarTexto(Remedio r) {
+        trava.writeLock().lock();
+        try {
+            Integer slot = slots.get(r);
+            if (slot != null && textos[slot].equals(texto(r))) {
+                // Só maiúsculas ou acentos mudaram
+                return;
+            }
+            liberar(r);
+            indexar(r);
+            reconstruirSeNecessario();
+        } finally {
+            trava.writeLock().unlock();
+        }
+        aoAlterar.run();
+    }
+
+    private void indexar(Remedio r) {
+        if (proximoSlot == textos.length) {
+            textos = Arrays.copyOf(textos, textos.length * 2);
+            remedios = Arrays.copyOf(remedios, remedios.length * 2);
+        }
+        int slot = proximoSlot++;
+        String texto = texto(r);
+        textos[slot] = texto;
+        remedios[slot] = r;
+        slots.put(r, slot);
+        for (int i = 0; i + 3 <= texto.length(); i++) {
+            adicionarPostagem(trigrama(texto, i), slot);
+        }
+        versao++;
+    }
+
+    // O separador impede que uma consulta case atravessando nome e observações
+    private static String texto(Remedio r) {
+        return normalizar(r.getNome()) + '\n' + normalizar(r.getObservacoes());
+    }
+
+    private void liberar(Remedio r) {
+        Integer slot = slots.remove(r);
+        if (slot != null) {
+            textos[slot] = null;
+            remedios[slot] = null;
+            obsoletos++;
+            versao++;
+        }
+    }
+
+    private void adicionarPostagem(long chave, int slot) {
+        int[] p = postagens.get(chave);
+        if (p == null) {
+            p = new int[4];
+            postagens.put(chave, p);
+        } else if (p[0] > 0 && p[p[0]] == slot) {
+            // Trigrama repetido no mesmo texto
+            return;
+        } else if (p[0] + 1 == p.length) {
+            p = Arrays.copyOf(p, p.length * 2);
+            postagens.put(chave, p);
+        }
+        p[++p[0]] = slot;
+    }
+
+    private void reconstruirSeNecessario() {
+        if (obsoletos < 1024 || obsoletos < slots.size()) {
+            return;
+        }
+        List<Remedio> vivos = new ArrayList<>(slots.size());
+        for (int i = 0; i < proximoSlot; i++) {
+            if (remedios[i] != null) {
+                vivos.add(remedios[i]);
+            }
+        }
+        postagens.clear();
+        slots.clear();
+        Arrays.fill(textos, null);
+        Arrays.fill(remedios, null);
+        proximoSlot = 0;
+        obsoletos = 0;
+        vivos.forEach(this::indexar);
+    }
+}
@@ -0,0 +1,167 @@
+package org.example;
+
+import javafx.collections.ModifiableObservableListBase;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+
+/**
+ * Lista observável dos remédios sobre um {@link ArrayList}, como a de
+ * {@code FXCollections.observableArrayList()}, com {@link #avisarAtualizacao}
+ * a mais.
+ *
+ * A atualização é a alteração que uma {@code SortedList} entende como
+ * "este elemento mudou, reposicione-o". Sem ela, a tabela só veria um
+ * remédio mudar de posição com uma remoção e uma inclusão, que o diário e o
+ * desfazer gravariam como tais. Avisar pela lista evita ainda um listener
+ * de property em cada remédio.
+ *
+ * As remoções em massa são feitas numa passada, como na lista do JavaFX.
+ *
+ * A posição de cada remédio fica num mapa por identidade, para que
+ * {@link #indexOf} (e o aviso de uma troca de ordem) custe O(1). Uma
+ * alteração estrutural só invalida as posições a partir do ponto alterado;
+ * elas são refeitas na próxima consulta, então incluir no fim não custa nada
+ * a mais e trocar a ordem, que não mexe na lista, nunca refaz o mapa.
+ */
+class ListaRemedios extends ModifiableObservableListBase<Remedio> implements RandomAccess {
+
+    private final ArrayList<Remedio> itens = new ArrayList<>();
+    private final Map<Remedio, Integer> posicoes = new IdentityHashMap<>();
+    // As posições em itens antes deste índice estão corretas no mapa
+    private int validoAte;
+
+    /** Avisa que os remédios nas posições, em ordem crescente, mudaram de um jeito que afeta a ordenação da tabela. */
+    void avisarAtualizacao(int... indices) {
+        beginChange();
+        for (int i : indices) {
+            nextUpdate(i);
+        }
+        endChange();
+    }
+
+    @Override
+    public Remedio get(int index) {
+        return itens.get(index);
+    }
+
+    @Override
+    public int size() {
+        return itens.size();
+    }
+
+    @Override
+    protected void doAdd(int index, Remedio element) {
+        itens.add(index, element);
+        if (index == validoAte && index == itens.size() - 1) {
+            posicoes.put(element, index);
+            validoAte++;
+        } else {
+            invalidar(index);
+        }
+    }
+
+    @Override
+    protected Remedio doSet(int index, Remedio element) {
+        Remedio anterior = itens.set(index, element);
+        posicoes.remove(anterior);
+        invalidar(index);
+        return anterior;
+    }
+
+    @Override
+    protected Remedio doRemove(int index) {
+        Remedio removido = itens.remove(index);
+        posicoes.remove(removido);
+        invalidar(index);
+        return removido;
+    }
+
+    @Override
+    public int indexOf(Object o) {
+        if (!(o instanceof Remedio r)) {
+            return -1;
+        }
+        Integer i = posicoes.get(r);
+        if (i == null || i >= validoAte) {
+            for (int j = validoAte; j < itens.size(); j++) {
+                posicoes.put(itens.get(j), j);
+            }
+            validoAte = itens.size();
+            i = posicoes.get(r);
+        }
+        return i == null ? -1 : i;
+    }
+
+    @Override
+    public int lastIndexOf(Object o) {
+        return indexOf(o);
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return indexOf(o) >= 0;
+    }
+
+    private void invalidar(int index) {
+        validoAte = Math.min(validoAte, index);
+    }
+
+    @Override
+    public void clear() {
+        removeRange(0, itens.size());
+    }
+
+    @Override
+    protected void removeRange(int fromIndex, int toIndex) {
+        if (fromIndex == toIndex) {
+            return;
+        }
+        List<Remedio> trecho = itens.subList(fromIndex, toIndex);
+        beginChange();
+        nextRemove(fromIndex, new ArrayList<>(trecho));
+        if (fromIndex == 0 && toIndex == itens.size()) {
+            posicoes.clear();
+        } else {
+            trecho.forEach(posicoes::remove);
+        }
+        trecho.clear();
+        invalidar(fromIndex);
+        endChange();
+    }
+
+    @Override
+    public boolean removeAll(Collection<?> c) {
+        return filtrar(c, true);
+    }
+
+    @Override
+    public boolean retainAll(Collection<?> c) {
+        return filtrar(c, false);
+    }
+
+    // Os que ficam são compactados no início; cada removido é avisado na posição
+    // que teria na lista resultante, e os vizinhos se juntam num mesmo trecho
+    private boolean filtrar(Collection<?> c, boolean removerContidos) {
+        beginChange();
+        int ficam = 0;
+        for (int i = 0; i < itens.size(); i++) {
+            Remedio r = itens.get(i);
+            if (c.contains(r) == removerContidos) {
+                nextRemove(ficam, r);
+                posicoes.remove(r);
+                invalidar(ficam);
+            } else {
+                itens.set(ficam++, r);
+            }
+        }
+        boolean alterou = ficam < itens.size();
+        itens.subList(ficam, itens.size()).clear();
+        endChange();
+        return alterou;
+    }
+}
@@ -1,17 +1,22 @@
 package org.example;
 
 
-import com.google.gson.Gson;
-import com.google.gson.reflect.TypeToken;
+import javafx.animation.PauseTransition;
 import javafx.application.Application;
 import javafx.application.Platform;
+import javafx.beans.binding.Bindings;
+import javafx.beans.binding.ObjectBinding;
 import javafx.beans.property.*;
 
 import javafx.collections.FXCollections;
+import javafx.collections.ListChangeListener;
 import javafx.collections.ObservableList;
 import javafx.collections.transformation.FilteredList;
+import javafx.collections.transformation.SortedList;
+import javafx.concurrent.Task;
 import javafx.geometry.Insets;
 import javafx.geometry.Pos;
+import javafx.geometry.Side;
 import javafx.scene.Scene;
 import javafx.scene.control.*;
 import javafx.scene.control.cell.CheckBoxTableCell;
@@ -20,26 +25,114 @@ import javafx.scene.input.*;
 import javafx.scene.layout.*;
 import javafx.stage.FileChooser;
 import javafx.stage.Stage;
+import javafx.util.Duration;
 
 import java.io.*;
-import java.time.LocalDateTime;
+import java.net.InetSocketAddress;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.LocalTime;
+import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
-import java.util.ArrayDeque;
-import java.util.Deque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 public class Main extends Application {
 
-    private static final String DATA_FILE = "remedios.json";
-    private final ObservableList<Remedio> listaRemedios = FXCollections.observableArrayList();
-    private final FilteredList<Remedio> filteredRemedios = new FilteredList<>(listaRemedios);
-    private final Deque<Remedio> undoStack = new ArrayDeque<>();
+    private static final DateTimeFormatter FORMATO_HORA = DateTimeFormatter.ofPattern("HH:mm");
+    // Opções compartilhadas por todas as células e caixas; nenhuma as altera
+    private static final ObservableList<String> DOSAGENS = FXCollections.unmodifiableObservableList(
+            FXCollections.observableArrayList("1 comprimido", "2 comprimidos", "5ml", "10ml", "1 gota", "2 gotas"));
+    private static final ObservableList<String> FREQUENCIAS = FXCollections.unmodifiableObservableList(
+            FXCollections.observableArrayList("Diário", "12/12h", "8/8h", "Semanal", "Quando necessário"));
+    // Catálogo de medicamentos para completar o nome; o CSV é compilado no índice quando é mais novo
+    private static final Path CATALOGO_CSV = Path.of("catalogo.csv");
+    private static final Path CATALOGO_INDICE = Path.of("catalogo.idx");
+    private static final int MAXIMO_SUGESTOES = 10;
+    // Horário da primeira dose de um remédio nunca tomado: -Dremedios.agenda.primeiraDose=08:00
+    private static final LocalTime PRIMEIRA_DOSE =
+            LocalTime.parse(System.getProperty("remedios.agenda.primeiraDose", "08:00"));
+    private Pacientes pacientes;
+    private Pacientes.Paciente pacienteAtual;
+    // Núcleo do paciente selecionado e os componentes ligados a ele, trocados em ligarNucleo
+    private NucleoRemedios nucleo;
+    private RepositorioRemedios repositorio;
+    private ObservableList<Remedio> listaRemedios;
+    private FilteredList<Remedio> filteredRemedios;
+    private SortedList<Remedio> sortedRemedios;
+    private ObjectBinding<Comparator<Remedio>> comparadorTabela;
+    private ResumoTomados resumoTomados;
+    private EstatisticasAdesao estatisticas;
+    private AgendadorDoses agendador;
+    private IndicePesquisa indicePesquisa;
+    private ServidorApi servidorApi;
+    // Pacientes que a API está carregando (thread do JavaFX)
+    private final Map<String, CompletableFuture<NucleoRemedios>> cargasApi = new HashMap<>();
+    private VigiaThreadFx vigia;
+    private final ExecutorService executorFundo = Executors.newCachedThreadPool(r -> {
+        Thread t = new Thread(r, "remedios-fundo");
+        t.setDaemon(true);
+        return t;
+    });
+    private final BooleanProperty carregando = new SimpleBooleanProperty(false);
+    // A exportação não bloqueia a edição, só o que usaria a mesma barra de progresso
+    private final BooleanProperty exportando = new SimpleBooleanProperty(false);
+    private final PauseTransition pausaPesquisa = new PauseTransition(Duration.millis(150));
+    private long sequenciaPesquisa;
 
     private TextField txtPesquisa = new TextField();
-    private TextArea txtAreaHistorico = new TextArea();
-    private TextArea txtAreaRemediosTomados = new TextArea();
+    private ComboBox<Pacientes.Paciente> cbPaciente = new ComboBox<>();
+    private TableView<Remedio> tableRemedios;
+    private ListView<String> lvHistorico = new ListView<>();
+    // Acompanha a entrada mais recente, como o antigo appendText fazia
+    private final ListChangeListener<String> rolarHistorico =
+            c -> lvHistorico.scrollTo(lvHistorico.getItems().size() - 1);
+    // Vale para toda marcação: na tabela, pela API ou ao desfazer. Num lote o resumo só
+    // atualiza os contadores no fim, então a conferência também espera o fim do lote
+    private final AlteracoesRemedios.Ouvinte ouvinteTomado = new AlteracoesRemedios.Ouvinte() {
+        private boolean marcouNoLote;
+
+        @Override
+        public void alterado(Remedio r, Remedio.Campo campo, Object antes) {
+            if (campo != Remedio.Campo.TOMADO || !r.isTomado()) {
+                return;
+            }
+            if (repositorio.getAlteracoes().isEmLote()) {
+                marcouNoLote = true;
+            } else {
+                parabenizarSeTodosTomados();
+            }
+        }
+
+        @Override
+        public void loteConcluido() {
+            if (marcouNoLote) {
+                marcouNoLote = false;
+                parabenizarSeTodosTomados();
+            }
+        }
+    };
+    private ListView<Remedio> lvRemediosTomados = new ListView<>();
+    private ProgressBar barraProgresso = new ProgressBar();
+    private Label lblProgresso = new Label();
+    private Button btnCancelarCarga = new Button("Cancelar");
+    private HBox boxCarregamento = new HBox(10, barraProgresso, lblProgresso, btnCancelarCarga);
 
     private Stage primaryStage;
+    // Remédio sendo arrastado na tabela
+    private Remedio arrastado;
+    // Aberto no primeiro uso do campo de nome (carregarCatalogo), não na inicialização
+    private CatalogoRemedios catalogo;
+    private boolean catalogoPedido;
 
     @Override
     public void start(Stage primaryStage) {
@@ -47,13 +140,201 @@ public class Main extends Application {
         primaryStage.setTitle("Gerenciador de Remédios Avançado");
         primaryStage.setResizable(true);
 
-        carregarDados();
-
         VBox mainLayout = criarLayoutPrincipal();
         Scene scene = new Scene(mainLayout, 1000, 700);
         primaryStage.setScene(scene);
-        primaryStage.setOnCloseRequest(e -> salvarDados());
         primaryStage.show();
+
+        try {
+            // O cache de pacientes abertos pode ocupar até um quarto do heap
+            pacientes = Pacientes.abrir(Path.of(""), Runtime.getRuntime().maxMemory() / 4);
+        } catch (IOException ex) {
+            mostrarAlerta("Erro", "Falha ao abrir a lista de pacientes: " + ex.getMessage());
+            Platform.exit();
+            return;
+        }
+        cbPaciente.setItems(pacientes.getLista());
+        cbPaciente.valueProperty().addListener((obs, antigo, novo) -> {
+            if (novo != null && novo != pacienteAtual) {
+                selecionarPaciente(novo);
+            }
+        });
+        cbPaciente.setValue(pacientes.getLista().get(0));
+        iniciarApi();
+        // Travamentos acima do limite aparecem no painel de diagnóstico: -Dremedios.vigia.limiteMs=500
+        vigia = new VigiaThreadFx(Platform::runLater, Long.getLong("remedios.vigia.limiteMs", 500));
+        vigia.iniciar();
+    }
+
+    // A API só é ligada quando a porta é informada: -Dremedios.api.porta=8085
+    // e exige um token: -Dremedios.api.token=... (cabeçalho "Authorization: Bearer ...").
+    // Escuta só neste computador; para outros aparelhos: -Dremedios.api.endereco=0.0.0.0
+    private void iniciarApi() {
+        String porta = System.getProperty("remedios.api.porta");
+        if (porta == null) {
+            return;
+        }
+        String token = System.getProperty("remedios.api.token");
+        if (token == null || token.isBlank()) {
+            mostrarAlerta("Erro", "A API não foi iniciada: informe o token em -Dremedios.api.token.");
+            return;
+        }
+        String endereco = System.getProperty("remedios.api.endereco", "127.0.0.1");
+        try {
+            servidorApi = new ServidorApi(new InetSocketAddress(endereco, Integer.parseInt(porta)), token,
+                    pacientes, Platform::runLater, this::abrirParaApi);
+            servidorApi.iniciar();
+            adicionarHistorico("API disponível em " + endereco + ":" + servidorApi.getPorta());
+        } catch (IOException | IllegalArgumentException ex) {
+            mostrarAlerta("Erro", "Falha ao iniciar a API na porta " + porta + ": " + ex.getMessage());
+        }
+    }
+
+    // Um paciente pedido pela API e ainda não aberto é carregado em segundo plano, como
+    // em carregarDados; pedidos repetidos durante a carga esperam pela mesma
+    private CompletableFuture<NucleoRemedios> abrirParaApi(Pacientes.Paciente paciente) {
+        NucleoRemedios n = pacientes.abrir(paciente);
+        CompletableFuture<NucleoRemedios> carga = cargasApi.get(paciente.id());
+        if (carga != null || n.isCarregado()) {
+            return carga != null ? carga : CompletableFuture.completedFuture(n);
+        }
+        if (n == nucleo && carregando.get()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        carga = new CompletableFuture<>();
+        cargasApi.put(paciente.id(), carga);
+        n.setAoFalhar(this::avisarFalha);
+        CompletableFuture<NucleoRemedios> resultado = carga;
+        executorFundo.execute(() -> {
+            try {
+                List<Remedio> lidos = n.lerDados(this::avisarFalha);
+                Platform.runLater(() -> {
+                    n.concluirCarga(lidos);
+                    vigiarArquivos(n);
+                    abrirHistoricoDoses(n).thenRun(() -> {
+                        cargasApi.remove(paciente.id());
+                        pacientes.liberarExcedente(nucleo);
+                        resultado.complete(n);
+                    });
+                });
+            } catch (IOException | RuntimeException ex) {
+                Platform.runLater(() -> {
+                    cargasApi.remove(paciente.id());
+                    pacientes.descartar(paciente);
+                    resultado.completeExceptionally(ex);
+                });
+            }
+        });
+        return carga;
+    }
+
+    // Alterações feitas por outro programa nos arquivos do paciente são mescladas na lista
+    private void vigiarArquivos(NucleoRemedios alvo) {
+        try {
+            alvo.vigiarArquivos(Platform::runLater);
+        } catch (IOException ex) {
+            avisarFalha("Falha ao acompanhar os arquivos de dados: " + ex.getMessage());
+        }
+    }
+
+    private void parabenizarSeTodosTomados() {
+        if (resumoTomados.todosTomados()) {
+            Platform.runLater(() -> mostrarAlerta("Parabéns!", "Todos os remédios foram tomados!"));
+        }
+    }
+
+    private void avisarFalha(String mensagem) {
+        Platform.runLater(() -> mostrarAlerta("Erro", mensagem));
+    }
+
+    @Override
+    public void stop() {
+        if (vigia != null) {
+            vigia.parar();
+        }
+        if (servidorApi != null) {
+            servidorApi.parar();
+        }
+        if (pacientes != null) {
+            pacientes.fechar();
+        }
+    }
+
+    // Um paciente já aberto aparece na hora; os demais são carregados em segundo plano
+    private void selecionarPaciente(Pacientes.Paciente paciente) {
+        pacienteAtual = paciente;
+        ligarNucleo(pacientes.abrir(paciente));
+        primaryStage.setTitle("Gerenciador de Remédios Avançado - " + paciente.nome());
+        CompletableFuture<NucleoRemedios> cargaApi = cargasApi.get(paciente.id());
+        if (cargaApi != null) {
+            // A API já está carregando este paciente; a janela só espera
+            carregando.set(true);
+            cargaApi.whenComplete((n, ex) -> {
+                if (ex != null) {
+                    falhaAoCarregar(paciente, ex);
+                } else {
+                    carregando.set(false);
+                }
+            });
+        } else if (!nucleo.isCarregado()) {
+            carregarDados();
+        }
+        pacientes.liberarExcedente(nucleo);
+    }
+
+    // O agendador, o índice e as listas da tabela ficam no núcleo; trocar de paciente
+    // só religa a tela a eles. A lista ordenada de um paciente fora da tela não
+    // acompanha a ordenação da tabela, e volta a ela (já quase ordenada) ao ser religada.
+    private void ligarNucleo(NucleoRemedios novo) {
+        if (nucleo != null) {
+            indicePesquisa.setAoAlterar(() -> { });
+            nucleo.getHistorico().removeListener(rolarHistorico);
+            repositorio.getAlteracoes().remover(ouvinteTomado);
+            sortedRemedios.comparatorProperty().unbind();
+        }
+        nucleo = novo;
+        nucleo.setAoFalhar(this::avisarFalha);
+        repositorio = nucleo.getRepositorio();
+        listaRemedios = repositorio.getRemedios();
+        filteredRemedios = nucleo.getFiltrados();
+        sortedRemedios = nucleo.getOrdenados();
+        sortedRemedios.comparatorProperty().bind(comparadorTabela);
+        resumoTomados = nucleo.getResumoTomados();
+        estatisticas = nucleo.getEstatisticas();
+        repositorio.getAlteracoes().adicionar(ouvinteTomado);
+        // Os lembretes continuam para os pacientes do cache, com o nome de cada um
+        NucleoRemedios alvo = nucleo;
+        String nomePaciente = pacienteAtual.nome();
+        agendador = nucleo.agendar(PRIMEIRA_DOSE, Platform::runLater,
+                vencidas -> avisarDosesVencidas(alvo, nomePaciente, vencidas));
+        indicePesquisa = nucleo.getIndicePesquisa();
+        indicePesquisa.setAoAlterar(() -> {
+            if (!txtPesquisa.getText().isEmpty()) {
+                pausaPesquisa.playFromStart();
+            }
+        });
+
+        tableRemedios.setItems(sortedRemedios);
+        lvHistorico.setItems(nucleo.getHistorico());
+        nucleo.getHistorico().addListener(rolarHistorico);
+        lvRemediosTomados.setItems(resumoTomados.getListaTomados());
+        executarPesquisa();
+    }
+
+    private void novoPaciente() {
+        TextInputDialog dialog = new TextInputDialog();
+        dialog.setTitle("Novo Paciente");
+        dialog.setHeaderText(null);
+        dialog.setContentText("Nome do paciente:");
+        dialog.showAndWait().ifPresent(nome -> {
+            try {
+                cbPaciente.setValue(pacientes.criar(nome));
+            } catch (IllegalArgumentException ex) {
+                mostrarAlerta("Erro", ex.getMessage());
+            } catch (IOException ex) {
+                mostrarAlerta("Erro", "Falha ao criar paciente: " + ex.getMessage());
+            }
+        });
     }
 
     private VBox criarLayoutPrincipal() {
@@ -67,23 +348,36 @@ public class Main extends Application {
         // Barra de ferramentas
         HBox toolbar = criarBarraFerramentas();
 
+        // Progresso de carregamento/importação
+        boxCarregamento.setAlignment(Pos.CENTER_LEFT);
+        boxCarregamento.setVisible(false);
+        boxCarregamento.managedProperty().bind(boxCarregamento.visibleProperty());
+
         // Seção de entrada de dados
         HBox boxEntrada = criarSecaoEntradaDados();
+        boxEntrada.disableProperty().bind(carregando);
 
         // Tabela
-        TableView<Remedio> tableRemedios = criarTabelaRemedios();
+        tableRemedios = criarTabelaRemedios();
+        // Sem ordenação por coluna, a tabela segue a ordem dos remédios; com ela, a ordem desempata
+        comparadorTabela = Bindings.createObjectBinding(() -> {
+            Comparator<Remedio> daTabela = tableRemedios.getComparator();
+            return daTabela == null ? RepositorioRemedios.POR_ORDEM
+                    : daTabela.thenComparing(RepositorioRemedios.POR_ORDEM);
+        }, tableRemedios.comparatorProperty());
+        HBox boxSelecao = criarBotoesSelecao();
 
         // Áreas de texto
         VBox boxAreasTexto = new VBox(10,
-                criarLabelArea("Histórico de Ações:", txtAreaHistorico),
-                criarLabelArea("Remédios Tomados:", txtAreaRemediosTomados));
+                criarListaHistorico("Histórico de Ações:"),
+                criarListaTomados("Remédios Tomados:"));
 
         // Botões inferiores
         HBox boxBotoes = criarBotoesInferiores();
 
         vboxMain.getChildren().addAll(
-                lblTitulo, toolbar, boxEntrada,
-                tableRemedios, boxAreasTexto, boxBotoes);
+                lblTitulo, toolbar, boxCarregamento, boxEntrada,
+                tableRemedios, boxSelecao, boxAreasTexto, boxBotoes);
 
         return vboxMain;
     }
@@ -95,18 +389,53 @@ public class Main extends Application {
         Button btnImportar = new Button("Importar");
         btnImportar.setOnAction(e -> importarDados());
 
+        Button btnCatalogo = new Button("Catálogo");
+        btnCatalogo.setOnAction(e -> importarCatalogo());
+
         Button btnUndo = new Button("Desfazer (Ctrl+Z)");
         btnUndo.setOnAction(e -> desfazerUltimaAcao());
 
+        Button btnRedo = new Button("Refazer (Ctrl+Y)");
+        btnRedo.setOnAction(e -> nucleo.refazer());
+
+        btnExportar.disableProperty().bind(carregando.or(exportando));
+        btnImportar.disableProperty().bind(carregando.or(exportando));
+        btnUndo.disableProperty().bind(carregando);
+        btnRedo.disableProperty().bind(carregando);
+
+        Button btnNovoPaciente = new Button("Novo Paciente");
+        btnNovoPaciente.setOnAction(e -> novoPaciente());
+        cbPaciente.setPromptText("Paciente");
+        cbPaciente.disableProperty().bind(carregando.or(exportando));
+        btnNovoPaciente.disableProperty().bind(carregando.or(exportando));
+
         txtPesquisa.setPromptText("Pesquisar remédios...");
-        txtPesquisa.textProperty().addListener((obs, oldVal, newVal) -> {
-            filteredRemedios.setPredicate(remedio ->
-                    remedio.getNome().toLowerCase().contains(newVal.toLowerCase()) ||
-                            remedio.getObservacoes().toLowerCase().contains(newVal.toLowerCase()));
-        });
+        // A pesquisa espera uma pausa na digitação e roda fora da thread do JavaFX
+        pausaPesquisa.setOnFinished(e -> executarPesquisa());
+        txtPesquisa.textProperty().addListener((obs, oldVal, newVal) -> pausaPesquisa.playFromStart());
+
+        return new HBox(10, new Label("Paciente:"), cbPaciente, btnNovoPaciente,
+                btnExportar, btnImportar, btnCatalogo, btnUndo, btnRedo, new Label("Pesquisar:"), txtPesquisa);
+    }
 
-        return new HBox(10, btnExportar, btnImportar, btnUndo,
-                new Label("Pesquisar:"), txtPesquisa);
+    private void executarPesquisa() {
+        String consulta = txtPesquisa.getText();
+        long sequencia = ++sequenciaPesquisa;
+        if (consulta.isEmpty()) {
+            filteredRemedios.setPredicate(null);
+            return;
+        }
+        IndicePesquisa indice = indicePesquisa;
+        FilteredList<Remedio> filtrada = filteredRemedios;
+        executorFundo.execute(() -> {
+            Set<Remedio> encontrados = indice.pesquisar(consulta);
+            Platform.runLater(() -> {
+                // Descarta resultados de consultas que já foram substituídas (ou de outro paciente)
+                if (sequencia == sequenciaPesquisa) {
+                    filtrada.setPredicate(encontrados::contains);
+                }
+            });
+        });
     }
 
     private HBox criarSecaoEntradaDados() {
@@ -114,15 +443,12 @@ public class Main extends Application {
         txtNome.setPromptText("Nome do remédio");
         TextField txtObs = new TextField();
         txtObs.setPromptText("Observações");
-        ComboBox<String> cbDosagem = new ComboBox<>(
-                FXCollections.observableArrayList("1 comprimido", "2 comprimidos",
-                        "5ml", "10ml", "1 gota", "2 gotas"));
+        ComboBox<String> cbDosagem = new ComboBox<>(DOSAGENS);
         cbDosagem.setPromptText("Dosagem");
 
-        ComboBox<String> cbFrequencia = new ComboBox<>(
-                FXCollections.observableArrayList("Diário", "12/12h", "8/8h",
-                        "Semanal", "Quando necessário"));
+        ComboBox<String> cbFrequencia = new ComboBox<>(FREQUENCIAS);
         cbFrequencia.setPromptText("Frequência");
+        configurarAutocompletar(txtNome, cbDosagem);
 
         Button btnAdicionar = new Button("Adicionar");
         btnAdicionar.setOnAction(e -> {
@@ -146,14 +472,123 @@ public class Main extends Application {
         return boxEntrada;
     }
 
+    // Sugestões do catálogo enquanto se digita; um nome do catálogo troca as dosagens pelas do produto.
+    // As consultas vão direto ao índice mapeado, então rodam aqui mesmo, a cada tecla
+    private void configurarAutocompletar(TextField txtNome, ComboBox<String> cbDosagem) {
+        ContextMenu sugestoes = new ContextMenu();
+        // Produto da última troca das dosagens; a lista só é refeita quando ele muda
+        CatalogoRemedios.Produto[] ultimoExato = {null};
+        txtNome.focusedProperty().addListener((obs, antes, focado) -> {
+            if (focado) {
+                carregarCatalogo();
+            } else {
+                sugestoes.hide();
+            }
+        });
+        txtNome.textProperty().addListener((obs, antes, texto) -> {
+            if (catalogo == null) {
+                return;
+            }
+            CatalogoRemedios.Produto exato = catalogo.procurar(texto);
+            if (!Objects.equals(exato, ultimoExato[0])) {
+                ultimoExato[0] = exato;
+                trocarDosagens(cbDosagem, dosagens(exato));
+            }
+            List<CatalogoRemedios.Produto> encontrados = texto.isBlank()
+                    ? List.of() : catalogo.sugerir(texto, MAXIMO_SUGESTOES);
+            if (encontrados.isEmpty() || (exato != null && encontrados.size() == 1)) {
+                sugestoes.hide();
+                return;
+            }
+            List<MenuItem> itens = new ArrayList<>(encontrados.size());
+            for (CatalogoRemedios.Produto produto : encontrados) {
+                MenuItem item = new MenuItem(produto.nome());
+                item.setMnemonicParsing(false);
+                item.setOnAction(e -> {
+                    txtNome.setText(produto.nome());
+                    txtNome.positionCaret(produto.nome().length());
+                });
+                itens.add(item);
+            }
+            sugestoes.getItems().setAll(itens);
+            if (!sugestoes.isShowing() && txtNome.isFocused()) {
+                sugestoes.show(txtNome, Side.BOTTOM, 0, 0);
+            }
+        });
+    }
+
+    // A dosagem já escolhida continua escolhida se o produto novo também a tem
+    private static void trocarDosagens(ComboBox<String> cbDosagem, ObservableList<String> itens) {
+        String escolhida = cbDosagem.getValue();
+        cbDosagem.setItems(itens);
+        if (escolhida != null && itens.contains(escolhida)) {
+            cbDosagem.setValue(escolhida);
+        } else {
+            cbDosagem.getSelectionModel().clearSelection();
+        }
+    }
+
+    private static ObservableList<String> dosagens(CatalogoRemedios.Produto produto) {
+        return produto == null || produto.formas().isEmpty()
+                ? DOSAGENS : FXCollections.observableArrayList(produto.formas());
+    }
+
+    // Compilar um CSV grande leva alguns segundos, então só acontece no primeiro uso e fora da thread do JavaFX
+    private void carregarCatalogo() {
+        if (catalogoPedido) {
+            return;
+        }
+        catalogoPedido = true;
+        executorFundo.execute(() -> {
+            try {
+                CatalogoRemedios aberto = CatalogoRemedios.abrirOuCompilar(CATALOGO_CSV, CATALOGO_INDICE);
+                if (aberto != null) {
+                    Platform.runLater(() -> catalogo = aberto);
+                }
+            } catch (IOException ex) {
+                avisarFalha("Falha ao abrir o catálogo de medicamentos: " + ex.getMessage());
+            }
+        });
+    }
+
+    private void importarCatalogo() {
+        FileChooser fileChooser = new FileChooser();
+        fileChooser.setTitle("Catálogo de Medicamentos");
+        fileChooser.getExtensionFilters().add(
+                new FileChooser.ExtensionFilter("CSV Files", "*.csv"));
+        File file = fileChooser.showOpenDialog(primaryStage);
+
+        if (file != null) {
+            catalogoPedido = true;
+            adicionarHistorico("Compilando o catálogo " + file.getName() + "...");
+            executorFundo.execute(() -> {
+                try {
+                    CatalogoRemedios.compilar(file.toPath(), CATALOGO_INDICE);
+                    CatalogoRemedios aberto = CatalogoRemedios.abrir(CATALOGO_INDICE);
+                    Platform.runLater(() -> {
+                        catalogo = aberto;
+                        adicionarHistorico("Catálogo carregado: " + aberto.getQuantidade() + " medicamentos");
+                    });
+                } catch (IOException ex) {
+                    avisarFalha("Falha ao compilar o catálogo: " + ex.getMessage());
+                }
+            });
+        }
+    }
+
     private TableView<Remedio> criarTabelaRemedios() {
-        TableView<Remedio> table = new TableView<>(filteredRemedios);
+        TableView<Remedio> table = new TableView<>();
 
         // 1) Ativar a redimensionamento automático:
         table.setColumnResizePolicy(TableView.CONSTRAINED_RESIZE_POLICY);
 
-        table.setEditable(true);
+        table.editableProperty().bind(carregando.not());
         table.setPrefHeight(300);
+        // Altura fixa: a tabela não mede cada linha ao rolar listas grandes
+        table.setFixedCellSize(28);
+        // Quem ordena é a SortedList ligada ao comparador da tabela (ligarNucleo)
+        table.setSortPolicy(t -> true);
+        table.getSelectionModel().setSelectionMode(SelectionMode.MULTIPLE);
 
         // Colunas
         TableColumn<Remedio, String> colNome = new TableColumn<>("Remédio");
@@ -162,16 +597,12 @@ public class Main extends Application {
 
         TableColumn<Remedio, String> colDosagem = new TableColumn<>("Dosagem");
         colDosagem.setCellValueFactory(cell -> cell.getValue().dosagemProperty());
-        colDosagem.setCellFactory(ComboBoxTableCell.forTableColumn(
-                FXCollections.observableArrayList("1 comprimido", "2 comprimidos",
-                        "5ml", "10ml", "1 gota", "2 gotas")));
+        colDosagem.setCellFactory(ComboBoxTableCell.forTableColumn(DOSAGENS));
         colDosagem.setPrefWidth(120);
 
         TableColumn<Remedio, String> colFrequencia = new TableColumn<>("Frequência");
         colFrequencia.setCellValueFactory(cell -> cell.getValue().frequenciaProperty());
-        colFrequencia.setCellFactory(ComboBoxTableCell.forTableColumn(
-                FXCollections.observableArrayList("Diário", "12/12h", "8/8h",
-                        "Semanal", "Quando necessário")));
+        colFrequencia.setCellFactory(ComboBoxTableCell.forTableColumn(FREQUENCIAS));
         colFrequencia.setPrefWidth(120);
 
         TableColumn<Remedio, String> colObs = new TableColumn<>("Observações");
@@ -189,27 +620,27 @@ public class Main extends Application {
 
         TableColumn<Remedio, Void> colAcoes = new TableColumn<>("Ações");
         colAcoes.setPrefWidth(150);
+        // Os botões agem sobre o remédio da linha, não sobre a posição, que muda com pesquisa e ordenação
         colAcoes.setCellFactory(param -> new TableCell<>() {
             private final Button btnRemover = new Button("Remover");
             private final Button btnEditar = new Button("Editar");
+            private final HBox box = new HBox(5, btnEditar, btnRemover);
 
             {
                 btnRemover.setStyle("-fx-text-fill: red;");
-                btnRemover.setOnAction(e -> removerRemedio(getIndex()));
+                btnRemover.setOnAction(e -> removerRemedio(getTableRow().getItem()));
+
+                btnEditar.setOnAction(e -> editarRemedio(getTableRow().getItem()));
 
-                btnEditar.setOnAction(e -> editarRemedio(getIndex()));
+                btnRemover.disableProperty().bind(carregando);
+                btnEditar.disableProperty().bind(carregando);
+                box.setAlignment(Pos.CENTER);
             }
 
             @Override
             protected void updateItem(Void item, boolean empty) {
                 super.updateItem(item, empty);
-                if (empty) {
-                    setGraphic(null);
-                } else {
-                    HBox box = new HBox(5, btnEditar, btnRemover);
-                    box.setAlignment(Pos.CENTER);
-                    setGraphic(box);
-                }
+                setGraphic(empty ? null : box);
             }
         });
 
@@ -223,6 +654,32 @@ public class Main extends Application {
         return table;
     }
 
+    // Ações sobre todas as linhas selecionadas, cada uma aplicada como um lote
+    private HBox criarBotoesSelecao() {
+        Button btnMarcar = new Button("Marcar como tomados");
+        btnMarcar.setOnAction(e -> nucleo.marcarTomados(selecionados(), true));
+
+        Button btnDesmarcar = new Button("Desmarcar");
+        btnDesmarcar.setOnAction(e -> nucleo.marcarTomados(selecionados(), false));
+
+        Button btnEditar = new Button("Editar selecionados");
+        btnEditar.setOnAction(e -> editarSelecionados());
+
+        Button btnRemover = new Button("Remover selecionados");
+        btnRemover.setStyle("-fx-text-fill: red;");
+        btnRemover.setOnAction(e -> nucleo.removerVarios(selecionados()));
+
+        HBox box = new HBox(10, new Label("Selecionados:"), btnMarcar, btnDesmarcar, btnEditar, btnRemover);
+        box.setAlignment(Pos.CENTER_LEFT);
+        box.disableProperty().bind(carregando.or(
+                Bindings.isEmpty(tableRemedios.getSelectionModel().getSelectedItems())));
+        return box;
+    }
+
+    private List<Remedio> selecionados() {
+        return new ArrayList<>(tableRemedios.getSelectionModel().getSelectedItems());
+    }
+
     private HBox criarBotoesInferiores() {
         Button btnSobre = new Button("Sobre");
         btnSobre.setOnAction(e -> mostrarSobre());
@@ -230,56 +687,72 @@ public class Main extends Application {
         Button btnEstatisticas = new Button("Estatísticas");
         btnEstatisticas.setOnAction(e -> mostrarEstatisticas());
 
+        Button btnProximas = new Button("Próximas Doses");
+        btnProximas.setOnAction(e -> mostrarProximasDoses());
+
         Button btnSair = new Button("Sair");
         btnSair.setOnAction(e -> Platform.exit());
 
         Region spacer = new Region();
         HBox.setHgrow(spacer, Priority.ALWAYS);
 
-        return new HBox(10, btnSobre, btnEstatisticas, spacer, btnSair);
+        Button btnDiagnostico = new Button("Diagnóstico");
+        btnDiagnostico.setOnAction(e -> mostrarDiagnostico());
+
+        return new HBox(10, btnSobre, btnEstatisticas, btnProximas, btnDiagnostico, spacer, btnSair);
     }
 
     private void adicionarRemedio(String nome, String observ, String dosagem, String frequencia) {
-        if (nome.isEmpty()) {
-            mostrarAlerta("Erro", "Nome do remédio não pode estar vazio!");
-            return;
-        }
-
-        if (listaRemedios.stream().anyMatch(r -> r.getNome().equalsIgnoreCase(nome))) {
-            mostrarAlerta("Erro", "Já existe um remédio com este nome!");
-            return;
+        try {
+            nucleo.adicionar(nome, observ, dosagem, frequencia);
+        } catch (IllegalArgumentException ex) {
+            mostrarAlerta("Erro", ex.getMessage());
         }
-
-        Remedio novo = new Remedio(nome, observ, dosagem, frequencia);
-        listaRemedios.add(novo);
-        adicionarHistorico("Adicionado: " + nome);
-
-        novo.tomadoProperty().addListener((obs, oldVal, newVal) -> {
-            atualizarStatusTomado(novo, newVal);
-            atualizarListas();
-        });
     }
 
-    private void removerRemedio(int index) {
-        if (index >= 0 && index < listaRemedios.size()) {
-            Remedio removido = listaRemedios.remove(index);
-            undoStack.push(removido);
-            adicionarHistorico("Removido: " + removido.getNome());
-            atualizarListas();
+    private void removerRemedio(Remedio remedio) {
+        if (remedio != null) {
+            nucleo.removerVarios(List.of(remedio));
         }
     }
 
     private void desfazerUltimaAcao() {
-        if (!undoStack.isEmpty()) {
-            Remedio restaurado = undoStack.pop();
-            listaRemedios.add(restaurado);
-            adicionarHistorico("Desfeita remoção de: " + restaurado.getNome());
-            atualizarListas();
-        }
+        nucleo.desfazer();
     }
 
-    private void editarRemedio(int index) {
-        Remedio selecionado = listaRemedios.get(index);
+    // Campos deixados em branco mantêm o valor de cada remédio
+    private void editarSelecionados() {
+        List<Remedio> alvo = selecionados();
+        Dialog<ButtonType> dialog = new Dialog<>();
+        dialog.setTitle("Editar " + alvo.size() + " Remédios");
+
+        GridPane grid = new GridPane();
+        grid.setHgap(10);
+        grid.setVgap(10);
+
+        ComboBox<String> cbDosagem = new ComboBox<>(DOSAGENS);
+        cbDosagem.setPromptText("(manter)");
+        ComboBox<String> cbFrequencia = new ComboBox<>(FREQUENCIAS);
+        cbFrequencia.setPromptText("(manter)");
+        TextField txtObs = new TextField();
+        txtObs.setPromptText("(manter)");
+
+        grid.addRow(0, new Label("Dosagem:"), cbDosagem);
+        grid.addRow(1, new Label("Frequência:"), cbFrequencia);
+        grid.addRow(2, new Label("Observações:"), txtObs);
+
+        dialog.getDialogPane().setContent(grid);
+        dialog.getDialogPane().getButtonTypes().addAll(ButtonType.OK, ButtonType.CANCEL);
+
+        dialog.showAndWait().filter(btn -> btn == ButtonType.OK).ifPresent(btn ->
+                nucleo.editarVarios(alvo, cbDosagem.getValue(), cbFrequencia.getValue(),
+                        txtObs.getText().isBlank() ? null : txtObs.getText().trim()));
+    }
+
+    private void editarRemedio(Remedio selecionado) {
+        if (selecionado == null) {
+            return;
+        }
         Dialog<Remedio> dialog = new Dialog<>();
         dialog.setTitle("Editar Remédio");
 
@@ -290,27 +763,29 @@ public class Main extends Application {
         TextField txtNome = new TextField(selecionado.getNome());
         TextField txtObs = new TextField(selecionado.getObservacoes());
         ComboBox<String> cbDosagem = new ComboBox<>(
-                FXCollections.observableArrayList("1 comprimido", "2 comprimidos", "5ml", "10ml", "1 gota", "2 gotas"));
+                dosagens(catalogo == null ? null : catalogo.procurar(selecionado.getNome())));
         cbDosagem.setValue(selecionado.getDosagem());
-        ComboBox<String> cbFrequencia = new ComboBox<>(
-                FXCollections.observableArrayList("Diário", "12/12h", "8/8h", "Semanal", "Quando necessário"));
+        ComboBox<String> cbFrequencia = new ComboBox<>(FREQUENCIAS);
         cbFrequencia.setValue(selecionado.getFrequencia());
 
         grid.addRow(0, new Label("Nome:"), txtNome);
         grid.addRow(1, new Label("Dosagem:"), cbDosagem);
         grid.addRow(2, new Label("Frequência:"), cbFrequencia);
         grid.addRow(3, new Label("Observações:"), txtObs);
+        grid.addRow(4, new Label("Doses nos últimos 7 dias:"), new Label(contarDosesSemana(selecionado)));
 
         dialog.getDialogPane().setContent(grid);
         dialog.getDialogPane().getButtonTypes().addAll(ButtonType.OK, ButtonType.CANCEL);
 
         dialog.setResultConverter(btn -> {
             if (btn == ButtonType.OK) {
-                selecionado.setNome(txtNome.getText());
-                selecionado.setObservacoes(txtObs.getText());
-                selecionado.setDosagem(cbDosagem.getValue());
-                selecionado.setFrequencia(cbFrequencia.getValue());
-                adicionarHistorico("Editado: " + selecionado.getNome());
+                try {
+                    nucleo.editar(selecionado, txtNome.getText(), txtObs.getText(),
+                            cbDosagem.getValue(), cbFrequencia.getValue());
+                } catch (IllegalArgumentException ex) {
+                    mostrarAlerta("Erro", ex.getMessage());
+                    return null;
+                }
                 return selecionado;
             }
             return null;
@@ -319,80 +794,77 @@ public class Main extends Application {
         dialog.showAndWait();
     }
 
-    private void atualizarStatusTomado(Remedio remedio, boolean tomado) {
-        if (tomado) {
-            remedio.setDataHoraTomado(LocalDateTime.now()
-                    .format(DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm")));
-            adicionarHistorico("Marcado como tomado: " + remedio.getNome());
-        } else {
-            remedio.setDataHoraTomado("");
-            adicionarHistorico("Desmarcado: " + remedio.getNome());
-        }
-
-        if (todosTomados()) {
-            mostrarAlerta("Parabéns!", "Todos os remédios foram tomados!");
+    private String contarDosesSemana(Remedio remedio) {
+        try {
+            return String.valueOf(nucleo.contarDosesSemana(remedio));
+        } catch (IOException ex) {
+            return "indisponível";
         }
     }
 
-    private void atualizarListas() {
-        StringBuilder tomados = new StringBuilder();
-        listaRemedios.stream()
-                .filter(Remedio::isTomado)
-                .forEach(r -> tomados.append(r.toString()).append("\n"));
-        txtAreaRemediosTomados.setText(tomados.toString());
-    }
-
-    private boolean todosTomados() {
-        return !listaRemedios.isEmpty() &&
-                listaRemedios.stream().allMatch(Remedio::isTomado);
-    }
-
+    // Arrastar só reordena quando a tabela segue a ordem dos remédios (sem ordenação por coluna).
+    // O remédio vai para antes da linha alvo se subiu e para depois se desceu, entre os
+    // vizinhos visíveis; com pesquisa ativa, os ocultos entre eles ficam onde estão
     private void configurarDragAndDrop(TableView<Remedio> table) {
         table.setRowFactory(tv -> {
             TableRow<Remedio> row = new TableRow<>();
 
             row.setOnDragDetected(event -> {
-                if (!row.isEmpty()) {
+                if (!row.isEmpty() && table.getSortOrder().isEmpty()) {
+                    arrastado = row.getItem();
                     Dragboard db = row.startDragAndDrop(TransferMode.MOVE);
                     ClipboardContent cc = new ClipboardContent();
-                    cc.putString(String.valueOf(row.getIndex()));
+                    cc.putString(arrastado.getNome());
                     db.setContent(cc);
                     event.consume();
                 }
             });
 
             row.setOnDragOver(event -> {
-                Dragboard db = event.getDragboard();
-                if (db.hasString()) {
+                if (arrastado != null && event.getGestureSource() != row) {
                     event.acceptTransferModes(TransferMode.MOVE);
                     event.consume();
                 }
             });
 
             row.setOnDragDropped(event -> {
-                Dragboard db = event.getDragboard();
-                if (db.hasString()) {
-                    int draggedIndex = Integer.parseInt(db.getString());
-                    Remedio draggedItem = listaRemedios.remove(draggedIndex);
-
-                    int dropIndex = row.isEmpty() ? listaRemedios.size() : row.getIndex();
-                    listaRemedios.add(dropIndex, draggedItem);
-
+                if (arrastado != null && !carregando.get()) {
+                    List<Remedio> visiveis = table.getItems();
+                    int de = visiveis.indexOf(arrastado);
+                    int para = row.isEmpty() ? visiveis.size() - 1 : row.getIndex();
+                    if (de >= 0 && para != de) {
+                        Remedio anterior = para > de ? visiveis.get(para) : para > 0 ? visiveis.get(para - 1) : null;
+                        Remedio seguinte = para > de ? (para + 1 < visiveis.size() ? visiveis.get(para + 1) : null)
+                                : visiveis.get(para);
+                        nucleo.mover(arrastado, anterior, seguinte);
+                    }
                     event.setDropCompleted(true);
                     event.consume();
                 }
             });
+
+            row.setOnDragDone(event -> arrastado = null);
             return row;
         });
     }
 
     private void configurarAtalhosTeclado(TableView<Remedio> table) {
         table.addEventHandler(KeyEvent.KEY_PRESSED, event -> {
+            if (carregando.get()) {
+                return;
+            }
             if (event.isControlDown() && event.getCode() == KeyCode.Z) {
-                desfazerUltimaAcao();
+                if (event.isShiftDown()) {
+                    nucleo.refazer();
+                } else {
+                    desfazerUltimaAcao();
+                }
+            }
+            if (event.isControlDown() && event.getCode() == KeyCode.Y) {
+                nucleo.refazer();
             }
             if (event.getCode() == KeyCode.DELETE) {
-                removerRemedio(table.getSelectionModel().getSelectedIndex());
+                nucleo.removerVarios(selecionados());
             }
         });
     }
@@ -407,41 +879,153 @@ public class Main extends Application {
                         + "- Histórico de ações\n"
                         + "- Edição de registros\n"
                         + "- Exportação/Importação de dados\n"
-                        + "- Sistema de desfazer ações");
+                        + "- Desfazer e refazer ações");
                 alert.showAndWait();
     }
 
     private void mostrarEstatisticas() {
-        long total = listaRemedios.size();
-        long tomados = listaRemedios.stream().filter(Remedio::isTomado).count();
+        long total = resumoTomados.getTotal();
+        long tomados = resumoTomados.getTomados();
 
-        Alert alert = new Alert(Alert.AlertType.INFORMATION);
-        alert.setTitle("Estatísticas");
-        alert.setHeaderText("Resumo do Uso");
-        alert.setContentText(String.format(
+        StringBuilder texto = new StringBuilder(String.format(
                 "Total de remédios: %d\n"
                         + "Tomados: %d\n"
                         + "Pendentes: %d\n"
                         + "Taxa de conclusão: %.1f%%",
-                total, tomados, total - tomados,
-                (total > 0 ? (tomados * 100.0 / total) : 0)));
+                total, tomados, total - tomados, ResumoTomados.taxaConclusao(total, tomados)));
+
+        if (!estatisticas.isPronto()) {
+            texto.append("\n\nAdesão: calculando...");
+        } else {
+            EstatisticasAdesao.Resumo r = estatisticas.resumo();
+            texto.append(String.format("\n\nDoses hoje: %d de %.0f previstas\n", r.tomadasHoje(), r.esperadasPorDia()))
+                    .append("Adesão hoje: ").append(formatarTaxa(r.taxaDia())).append('\n')
+                    .append("Adesão 7 dias: ").append(formatarTaxa(r.taxaSemana())).append('\n')
+                    .append("Adesão 30 dias: ").append(formatarTaxa(r.taxaMes())).append('\n')
+                    .append("Doses atrasadas (30 dias): ").append(r.atrasadasMes());
+            if (!r.melhoresSequencias().isEmpty()) {
+                texto.append("\n\nDias seguidos:");
+                for (EstatisticasAdesao.SequenciaRemedio s : r.melhoresSequencias()) {
+                    texto.append(String.format("\n%s: %d (recorde %d)", s.nome(), s.atual(), s.melhor()));
+                }
+            }
+        }
+
+        Alert alert = new Alert(Alert.AlertType.INFORMATION);
+        alert.setTitle("Estatísticas");
+        alert.setHeaderText("Resumo do Uso");
+        alert.setContentText(texto.toString());
         alert.showAndWait();
     }
 
+    private static String formatarTaxa(double taxa) {
+        return Double.isNaN(taxa) ? "-" : String.format("%.1f%%", taxa * 100);
+    }
+
+    private void mostrarDiagnostico() {
+        TextArea texto = new TextArea(Diagnostico.relatorio());
+        texto.setEditable(false);
+        texto.setStyle("-fx-font-family: monospace;");
+        texto.setPrefSize(760, 480);
+
+        Button btnAtualizar = new Button("Atualizar");
+        btnAtualizar.setOnAction(e -> texto.setText(Diagnostico.relatorio()));
+        Button btnExportar = new Button("Exportar...");
+        btnExportar.setOnAction(e -> exportarDiagnostico());
+
+        Dialog<Void> dialog = new Dialog<>();
+        dialog.setTitle("Diagnóstico");
+        dialog.setResizable(true);
+        dialog.getDialogPane().setContent(new VBox(10, texto, new HBox(10, btnAtualizar, btnExportar)));
+        dialog.getDialogPane().getButtonTypes().add(ButtonType.CLOSE);
+        dialog.show();
+    }
+
+    private void exportarDiagnostico() {
+        FileChooser fileChooser = new FileChooser();
+        fileChooser.setTitle("Exportar Diagnóstico");
+        fileChooser.setInitialFileName("diagnostico.txt");
+        File file = fileChooser.showSaveDialog(primaryStage);
+        if (file != null) {
+            try {
+                Diagnostico.exportar(file.toPath());
+            } catch (IOException ex) {
+                mostrarAlerta("Erro", "Falha ao exportar diagnóstico: " + ex.getMessage());
+            }
+        }
+    }
+
+    private void mostrarProximasDoses() {
+        long limite = System.currentTimeMillis() + TimeUnit.HOURS.toMillis(1);
+        List<AgendadorDoses.Dose> proximas = agendador.vencendoAte(limite);
+
+        StringBuilder texto = new StringBuilder();
+        proximas.stream().limit(30).forEach(d -> texto.append(FORMATO_HORA.format(
+                Instant.ofEpochMilli(d.vencimento()).atZone(ZoneId.systemDefault())))
+                .append(" - ").append(d.nome()).append("\n"));
+        if (proximas.size() > 30) {
+            texto.append("... e mais ").append(proximas.size() - 30);
+        }
+
+        Alert alert = new Alert(Alert.AlertType.INFORMATION);
+        alert.setTitle("Próximas Doses");
+        alert.setHeaderText("Doses na próxima hora: " + proximas.size());
+        alert.setContentText(proximas.isEmpty() ? "Nenhuma dose prevista." : texto.toString());
+        alert.showAndWait();
+    }
+
+    // Chamado pelo agendador na thread do JavaFX; o aviso não bloqueia a janela
+    private void avisarDosesVencidas(NucleoRemedios alvo, String paciente, List<AgendadorDoses.Dose> vencidas) {
+        StringBuilder nomes = new StringBuilder();
+        vencidas.stream().limit(10).forEach(d -> nomes.append("\n- ").append(d.nome()));
+        if (vencidas.size() > 10) {
+            nomes.append("\n... e mais ").append(vencidas.size() - 10);
+        }
+        alvo.registrar("Lembrete: " + vencidas.size() + " dose(s) no horário");
+
+        Alert alert = new Alert(Alert.AlertType.INFORMATION);
+        alert.setTitle("Lembrete");
+        alert.setHeaderText("Hora de tomar (" + paciente + "):");
+        alert.setContentText(nomes.toString().strip());
+        alert.show();
+    }
+
+    // O formato vem do filtro escolhido (ou da extensão digitada); ".gz" comprime
     private void exportarDados() {
         FileChooser fileChooser = new FileChooser();
         fileChooser.setTitle("Exportar Dados");
-        fileChooser.getExtensionFilters().add(
-                new FileChooser.ExtensionFilter("JSON Files", "*.json"));
+        for (ExportadorRemedios.Formato f : ExportadorRemedios.Formato.values()) {
+            String nome = f.name() + " Files";
+            fileChooser.getExtensionFilters().addAll(
+                    new FileChooser.ExtensionFilter(nome, "*" + f.getExtensao()),
+                    new FileChooser.ExtensionFilter(nome + " (gzip)", "*" + f.getExtensao() + ".gz"));
+        }
         File file = fileChooser.showSaveDialog(primaryStage);
 
         if (file != null) {
-            try (Writer writer = new FileWriter(file)) {
-                new Gson().toJson(listaRemedios, writer);
-                adicionarHistorico("Dados exportados para: " + file.getName());
-            } catch (IOException ex) {
-                mostrarAlerta("Erro", "Falha ao exportar dados: " + ex.getMessage());
+            Path destino = file.toPath();
+            String extensao = fileChooser.getSelectedExtensionFilter().getExtensions().get(0).substring(1);
+            if (!destino.getFileName().toString().contains(".")) {
+                destino = Path.of(destino + extensao);
             }
+            String nome = destino.getFileName().toString();
+            NucleoRemedios alvo = nucleo;
+            ExportadorRemedios exportacao = new ExportadorRemedios(alvo.copiarLista(), destino,
+                    ExportadorRemedios.Formato.deArquivo(destino), ExportadorRemedios.isGzip(destino));
+            exportacao.setOnSucceeded(e -> {
+                exportando.set(false);
+                alvo.registrar("Dados exportados para: " + nome);
+            });
+            exportacao.setOnCancelled(e -> {
+                exportando.set(false);
+                alvo.registrar("Exportação cancelada: " + nome);
+            });
+            exportacao.setOnFailed(e -> {
+                exportando.set(false);
+                mostrarAlerta("Erro", "Falha ao exportar dados: " + exportacao.getException().getMessage());
+            });
+            exportando.set(true);
+            executarComProgresso(exportacao, true);
         }
     }
 
@@ -453,44 +1037,132 @@ public class Main extends Application {
         File file = fileChooser.showOpenDialog(primaryStage);
 
         if (file != null) {
-            try (Reader reader = new FileReader(file)) {
-                List<Remedio> importados = new Gson().fromJson(reader,
-                        new TypeToken<List<Remedio>>(){}.getType());
-                listaRemedios.setAll(importados);
+            // A importação inteira é um passo do desfazer; se for cancelada ou falhar, ele é revertido
+            DesfazerRefazer desfazer = nucleo.getDesfazer();
+            desfazer.iniciarGrupo("Importação de " + file.getName());
+            List<Remedio> conflitos = new ArrayList<>();
+            boolean[] primeiroBloco = {true};
+            CarregadorRemedios carga = new CarregadorRemedios(file.toPath(), true, bloco -> {
+                conflitos.addAll(repositorio.adicionarLote(bloco, primeiroBloco[0]));
+                primeiroBloco[0] = false;
+            });
+            carga.setOnSucceeded(e -> {
+                if (primeiroBloco[0]) {
+                    listaRemedios.clear();
+                }
+                desfazer.concluirGrupo();
+                carregando.set(false);
                 adicionarHistorico("Dados importados de: " + file.getName());
-            } catch (IOException ex) {
-                mostrarAlerta("Erro", "Falha ao importar dados: " + ex.getMessage());
-            }
+                if (!conflitos.isEmpty()) {
+                    relatarConflitos(conflitos);
+                }
+            });
+            carga.setOnCancelled(e -> {
+                desfazer.cancelarGrupo();
+                carregando.set(false);
+                adicionarHistorico("Importação cancelada: " + file.getName());
+            });
+            carga.setOnFailed(e -> {
+                desfazer.cancelarGrupo();
+                carregando.set(false);
+                mostrarAlerta("Erro", "Falha ao importar dados: " + carga.getException().getMessage());
+            });
+            executarCarga(carga, true);
+        }
+    }
+
+    private void relatarConflitos(List<Remedio> conflitos) {
+        StringBuilder nomes = new StringBuilder();
+        conflitos.stream().limit(10).forEach(r -> nomes.append("\n- ").append(r.getNome()));
+        if (conflitos.size() > 10) {
+            nomes.append("\n... e mais ").append(conflitos.size() - 10);
         }
+        mostrarAlerta("Importação", conflitos.size()
+                + " remédio(s) ignorado(s) por nome duplicado:" + nomes);
+        adicionarHistorico("Importação ignorou " + conflitos.size() + " nome(s) duplicado(s)");
     }
 
+    // Abre o diário (reaplicando o que ficou pendente) e depois lê o snapshot em fluxo
     private void carregarDados() {
-        File file = new File(DATA_FILE);
-        if (file.exists()) {
-            try (Reader reader = new FileReader(file)) {
-                List<Remedio> carregados = new Gson().fromJson(reader,
-                        new TypeToken<List<Remedio>>(){}.getType());
-                listaRemedios.setAll(carregados);
-                adicionarHistorico("Dados carregados automaticamente");
+        NucleoRemedios alvo = nucleo;
+        Pacientes.Paciente paciente = pacienteAtual;
+        carregando.set(true);
+        executorFundo.execute(() -> {
+            try {
+                alvo.abrirDiario(msg -> Platform.runLater(() -> mostrarAlerta("Erro", msg)));
+                Platform.runLater(() -> {
+                    CarregadorRemedios carga = new CarregadorRemedios(alvo.getArquivoDados(), false,
+                            alvo.getRepositorio().getRemedios()::addAll);
+                    carga.setOnSucceeded(e -> {
+                        alvo.passarAGravar();
+                        vigiarArquivos(alvo);
+                        carregando.set(false);
+                        abrirHistoricoDoses(alvo);
+                        if (carga.getValue() > 0) {
+                            alvo.registrar("Dados carregados automaticamente");
+                        }
+                        // Com a lista carregada, a estimativa de memória deste paciente mudou
+                        pacientes.liberarExcedente(nucleo);
+                    });
+                    carga.setOnFailed(e -> falhaAoCarregar(paciente, carga.getException()));
+                    executarCarga(carga, false);
+                });
             } catch (IOException ex) {
-                mostrarAlerta("Erro", "Falha ao carregar dados: " + ex.getMessage());
+                Platform.runLater(() -> falhaAoCarregar(paciente, ex));
             }
-        }
+        });
     }
 
-    private void salvarDados() {
-        try (Writer writer = new FileWriter(DATA_FILE)) {
-            new Gson().toJson(listaRemedios, writer);
-            adicionarHistorico("Dados salvos automaticamente");
-        } catch (IOException ex) {
-            mostrarAlerta("Erro", "Falha ao salvar dados: " + ex.getMessage());
-        }
+    // Só os cabeçalhos dos blocos são lidos, e fora da thread do JavaFX; em seguida
+    // as estatísticas de adesão são montadas a partir das doses. O retorno é
+    // completado na thread do JavaFX, mesmo se a abertura falhar.
+    private CompletableFuture<Void> abrirHistoricoDoses(NucleoRemedios alvo) {
+        CompletableFuture<Void> aberto = new CompletableFuture<>();
+        executorFundo.execute(() -> {
+            try {
+                alvo.abrirHistoricoDoses();
+                // Os horários montados antes disso não conheciam as doses anteriores
+                Platform.runLater(() -> {
+                    if (alvo.getAgendador() != null) {
+                        alvo.getAgendador().reagendarTodos();
+                    }
+                    aberto.complete(null);
+                });
+            } catch (IOException ex) {
+                Platform.runLater(() -> {
+                    mostrarAlerta("Erro", "Falha ao abrir histórico de doses: " + ex.getMessage());
+                    aberto.complete(null);
+                });
+            }
+        });
+        return aberto;
+    }
+
+    // Sem o diário ligado, o arquivo existente não é sobrescrito por uma lista incompleta.
+    // O paciente sai do cache, e selecioná-lo de novo tenta carregar outra vez.
+    private void falhaAoCarregar(Pacientes.Paciente paciente, Throwable ex) {
+        carregando.set(false);
+        pacientes.descartar(paciente);
+        mostrarAlerta("Erro", "Falha ao carregar dados: " + ex.getMessage()
+                + "\nAs alterações desta sessão não serão salvas.");
+    }
+
+    private void executarCarga(CarregadorRemedios carga, boolean cancelavel) {
+        carregando.set(true);
+        executarComProgresso(carga, cancelavel);
+    }
+
+    private void executarComProgresso(Task<?> tarefa, boolean cancelavel) {
+        barraProgresso.progressProperty().bind(tarefa.progressProperty());
+        lblProgresso.textProperty().bind(tarefa.messageProperty());
+        btnCancelarCarga.setVisible(cancelavel);
+        btnCancelarCarga.setOnAction(e -> tarefa.cancel());
+        boxCarregamento.visibleProperty().bind(tarefa.runningProperty());
+        executorFundo.execute(tarefa);
     }
 
     private void adicionarHistorico(String mensagem) {
-        String timestamp = LocalDateTime.now()
-                .format(DateTimeFormatter.ofPattern("HH:mm:ss"));
-        txtAreaHistorico.appendText("[" + timestamp + "] " + mensagem + "\n");
+        nucleo.registrar(mensagem);
     }
 
     private void mostrarAlerta(String titulo, String mensagem) {
@@ -501,60 +1173,32 @@ public class Main extends Application {
         alert.showAndWait();
     }
 
-    private VBox criarLabelArea(String label, TextArea area) {
-        area.setEditable(false);
-        area.setWrapText(true);
-        VBox box = new VBox(5, new Label(label), area);
+    private VBox criarLabelArea(String label, Control conteudo) {
+        VBox box = new VBox(5, new Label(label), conteudo);
         box.setPrefHeight(150);
         return box;
     }
 
-    public static class Remedio implements Serializable {
-        private final StringProperty nome = new SimpleStringProperty();
-        private final StringProperty observacoes = new SimpleStringProperty();
-        private final StringProperty dosagem = new SimpleStringProperty();
-        private final StringProperty frequencia = new SimpleStringProperty();
-        private final BooleanProperty tomado = new SimpleBooleanProperty(false);
-        private final StringProperty dataHoraTomado = new SimpleStringProperty("");
-
-        public Remedio(String nome, String obs, String dosagem, String frequencia) {
-            this.nome.set(nome);
-            this.observacoes.set(obs);
-            this.dosagem.set(dosagem);
-            this.frequencia.set(frequencia);
-        }
-
-        // Getters, setters e properties
-        public String getNome() { return nome.get(); }
-        public void setNome(String value) { nome.set(value); }
-        public StringProperty nomeProperty() { return nome; }
-
-        public String getObservacoes() { return observacoes.get(); }
-        public void setObservacoes(String value) { observacoes.set(value); }
-        public StringProperty observacoesProperty() { return observacoes; }
-
-        public String getDosagem() { return dosagem.get(); }
-        public void setDosagem(String value) { dosagem.set(value); }
-        public StringProperty dosagemProperty() { return dosagem; }
-
-        public String getFrequencia() { return frequencia.get(); }
-        public void setFrequencia(String value) { frequencia.set(value); }
-        public StringProperty frequenciaProperty() { return frequencia; }
-
-        public boolean isTomado() { return tomado.get(); }
-        public void setTomado(boolean value) { tomado.set(value); }
-        public BooleanProperty tomadoProperty() { return tomado; }
-
-        public String getDataHoraTomado() { return dataHoraTomado.get(); }
-        public void setDataHoraTomado(String value) { dataHoraTomado.set(value); }
-        public StringProperty dataHoraTomadoProperty() { return dataHoraTomado; }
+    private VBox criarListaHistorico(String label) {
+        return criarLabelArea(label, lvHistorico);
+    }
 
-        @Override
-        public String toString() {
-            return String.format("%s - %s (%s) %s",
-                    nome.get(), dosagem.get(), frequencia.get(),
-                    tomado.get() ? "Tomado: " + dataHoraTomado.get() : "Pendente");
-        }
+    // Lista virtualizada: só as células visíveis existem, e cada uma acompanha o horário da tomada
+    private VBox criarListaTomados(String label) {
+        lvRemediosTomados.setCellFactory(lv -> new ListCell<>() {
+            @Override
+            protected void updateItem(Remedio item, boolean empty) {
+                super.updateItem(item, empty);
+                textProperty().unbind();
+                if (empty || item == null) {
+                    setText(null);
+                } else {
+                    textProperty().bind(Bindings.createStringBinding(item::toString,
+                            item.dataHoraTomadoProperty()));
+                }
+            }
+        });
+        return criarLabelArea(label, lvRemediosTomados);
     }
 
     public static void main(String[] args) {
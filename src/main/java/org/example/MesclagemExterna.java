@@ -0,0 +1,209 @@
+package org.example;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Incorpora à lista uma versão dos dados alterada por fora do programa,
+ * aplicando só os remédios que mudaram, pelo id.
+ *
+ * A comparação é de três lados. A base é a última versão que os dois
+ * lados tinham em comum ({@link DiarioRemedios#aguardarBase()}). Um
+ * remédio mudou por fora se o hash dele na versão externa difere da base,
+ * e mudou aqui se o da lista difere. Se mudou só por fora, a alteração é
+ * aplicada. Se mudou nos dois lados de formas diferentes, é um conflito:
+ * a versão da lista é mantida e o remédio é relatado.
+ *
+ * {@link #comparar} roda fora da thread da lista e percorre as duas versões
+ * inteiras. {@link #aplicar} roda na thread da lista, percorre a lista uma
+ * vez e só altera os remédios encontrados na diferença, então a tabela não
+ * é recarregada.
+ *
+ * Um arquivo gravado sem ids (por um script, no formato JSON antigo) recebe
+ * ids novos na leitura; antes da comparação, {@link #associarPorNome} devolve
+ * a essas linhas o id do remédio da lista com o mesmo nome. Um remédio cujo
+ * nome continua na versão externa nunca é removido.
+ */
+public final class MesclagemExterna {
+
+    /** Remédios da versão externa que diferem da base e ids que saíram dela. */
+    public record Diferenca(VersaoArquivo base, VersaoArquivo externa, List<Remedio> alterados,
+                            List<Remedio> adicionados, List<Integer> posicoes, long[] removidos,
+                            Set<String> nomes) {
+        public boolean isVazia() {
+            return alterados.isEmpty() && adicionados.isEmpty() && removidos.length == 0;
+        }
+    }
+
+    /** Quantos remédios foram aplicados e os conflitos, como "nome: motivo". */
+    public record Resultado(int alterados, int adicionados, int removidos, List<String> conflitos) { }
+
+    /** Id e ordem de um remédio da lista, para {@link #associarPorNome}. */
+    public record Local(long id, double ordem) { }
+
+    private MesclagemExterna() {
+    }
+
+    /** Se alguma linha externa tem id que a base não conhece, e {@link #associarPorNome} pode ser útil. */
+    public static boolean temIdsDesconhecidos(List<Remedio> externos, VersaoArquivo base) {
+        for (Remedio r : externos) {
+            if (base.hash(r.getId()) == 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Ids e ordens dos remédios da lista pela chave do nome; deve rodar na thread da lista. */
+    public static Map<String, Local> porNome(RepositorioRemedios repositorio) {
+        Map<String, Local> locais = new HashMap<>();
+        for (Remedio r : repositorio.getRemedios()) {
+            locais.putIfAbsent(RepositorioRemedios.chave(r.getNome()), new Local(r.getId(), r.getOrdem()));
+        }
+        return locais;
+    }
+
+    /**
+     * Troca cada linha externa de id desconhecido pela base pela mesma linha com
+     * o id do remédio da lista de mesmo nome, se esse id não está em outra linha
+     * externa. Sem ordem no arquivo, a linha fica com a do remédio da lista.
+     */
+    public static List<Remedio> associarPorNome(List<Remedio> externos, VersaoArquivo base,
+                                                Map<String, Local> locais) {
+        Set<Long> usados = new HashSet<>();
+        for (Remedio r : externos) {
+            if (base.hash(r.getId()) != 0) {
+                usados.add(r.getId());
+            }
+        }
+        List<Remedio> associados = new ArrayList<>(externos.size());
+        for (Remedio r : externos) {
+            Local local = base.hash(r.getId()) == 0 ? locais.get(RepositorioRemedios.chave(r.getNome())) : null;
+            if (local == null || !usados.add(local.id())) {
+                associados.add(r);
+                continue;
+            }
+            Remedio comId = new Remedio(local.id(), r.getNome(), r.getObservacoes(), r.getDosagem(), r.getFrequencia());
+            comId.setTomado(r.isTomado());
+            comId.setDataHoraTomado(r.getDataHoraTomado());
+            comId.atribuirOrdem(r.getOrdem() != 0 ? r.getOrdem() : local.ordem());
+            associados.add(comId);
+        }
+        return associados;
+    }
+
+    /** Compara a versão externa, na ordem do arquivo, com a base. */
+    public static Diferenca comparar(List<Remedio> externos, VersaoArquivo base) {
+        VersaoArquivo externa = VersaoArquivo.de(externos);
+        Set<String> nomes = new HashSet<>();
+        List<Remedio> alterados = new ArrayList<>();
+        List<Remedio> adicionados = new ArrayList<>();
+        List<Integer> posicoes = new ArrayList<>();
+        for (int i = 0; i < externos.size(); i++) {
+            Remedio r = externos.get(i);
+            nomes.add(RepositorioRemedios.chave(r.getNome()));
+            long antes = base.hash(r.getId());
+            if (antes == 0) {
+                adicionados.add(r);
+                posicoes.add(i);
+            } else if (antes != externa.hash(r.getId())) {
+                alterados.add(r);
+            }
+        }
+        List<Long> removidos = new ArrayList<>();
+        base.paraCadaId(id -> {
+            if (externa.hash(id) == 0) {
+                removidos.add(id);
+            }
+        });
+        return new Diferenca(base, externa, alterados, adicionados, posicoes,
+                removidos.stream().mapToLong(Long::longValue).toArray(), nomes);
+    }
+
+    /** Aplica a diferença na lista; deve rodar na thread da lista, de preferência num lote. */
+    public static Resultado aplicar(RepositorioRemedios repositorio, Diferenca d) {
+        List<Remedio> lista = repositorio.getRemedios();
+        Set<Long> procurados = new HashSet<>();
+        d.alterados().forEach(r -> procurados.add(r.getId()));
+        d.adicionados().forEach(r -> procurados.add(r.getId()));
+        for (long id : d.removidos()) {
+            procurados.add(id);
+        }
+        Map<Long, Remedio> locais = new HashMap<>();
+        for (Remedio r : lista) {
+            if (procurados.contains(r.getId())) {
+                locais.put(r.getId(), r);
+            }
+        }
+
+        List<String> conflitos = new ArrayList<>();
+        int alterados = 0;
+        for (Remedio externo : d.alterados()) {
+            Remedio local = locais.get(externo.getId());
+            if (local == null) {
+                conflitos.add(externo.getNome() + ": removido aqui e alterado por fora");
+            } else if (VersaoArquivo.hash(local) != VersaoArquivo.hash(externo)) {
+                if (VersaoArquivo.hash(local) != d.base().hash(local.getId())) {
+                    conflitos.add(local.getNome() + ": alterado aqui e por fora");
+                } else if (!repositorio.nomeDisponivel(externo.getNome(), local)) {
+                    conflitos.add(externo.getNome() + ": nome já usado por outro remédio");
+                } else {
+                    copiarCampos(externo, local);
+                    alterados++;
+                }
+            }
+        }
+
+        int adicionados = 0;
+        for (int i = 0; i < d.adicionados().size(); i++) {
+            Remedio externo = d.adicionados().get(i);
+            Remedio local = locais.get(externo.getId());
+            if (local != null) {
+                if (VersaoArquivo.hash(local) != VersaoArquivo.hash(externo)) {
+                    conflitos.add(local.getNome() + ": incluído aqui e por fora com o mesmo id");
+                }
+            } else if (repositorio.existeNome(externo.getNome())) {
+                conflitos.add(externo.getNome() + ": nome já usado por outro remédio");
+            } else {
+                lista.add(Math.min(d.posicoes().get(i), lista.size()), externo);
+                adicionados++;
+            }
+        }
+
+        List<Remedio> removidos = new ArrayList<>();
+        for (long id : d.removidos()) {
+            Remedio local = locais.get(id);
+            if (local == null) {
+                continue;
+            }
+            if (VersaoArquivo.hash(local) != d.base().hash(id)) {
+                conflitos.add(local.getNome() + ": alterado aqui e removido por fora");
+            } else if (d.nomes().contains(RepositorioRemedios.chave(local.getNome()))) {
+                conflitos.add(local.getNome() + ": removido por fora, mas o nome continua no arquivo");
+            } else {
+                removidos.add(local);
+            }
+        }
+        if (!removidos.isEmpty()) {
+            repositorio.removerVarios(removidos);
+        }
+        return new Resultado(alterados, adicionados, removidos.size(), conflitos);
+    }
+
+    // "Tomado" antes do horário: a marcação preenche o horário atual, que é então trocado pelo de fora
+    private static void copiarCampos(Remedio de, Remedio para) {
+        para.setNome(de.getNome());
+        para.setObservacoes(de.getObservacoes());
+        para.setDosagem(de.getDosagem());
+        para.setFrequencia(de.getFrequencia());
+        para.setTomado(de.isTomado());
+        para.setDataHoraTomado(de.getDataHoraTomado());
+        if (de.getOrdem() != 0) {
+            para.setOrdem(de.getOrdem());
+        }
+    }
+}
@@ -0,0 +1,493 @@
+package org.example;
+
+import javafx.collections.transformation.FilteredList;
+import javafx.collections.transformation.SortedList;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+
+/**
+ * Modelo e operações do gerenciador de remédios, sem dependência da interface.
+ *
+ * Reúne a lista, a persistência (snapshot e diário), o histórico de doses e
+ * as estatísticas. A janela JavaFX e o modo de lote da linha de comando usam
+ * este mesmo núcleo; nenhuma operação exige o toolkit do JavaFX em execução,
+ * só as coleções observáveis do javafx.base.
+ *
+ * Os métodos devem ser chamados sempre da mesma thread (a do JavaFX, na
+ * janela), exceto os indicados como de segundo plano.
+ */
+public class NucleoRemedios {
+
+    public static final String ARQUIVO_DADOS = "remedios.bin";
+    public static final String ARQUIVO_DADOS_JSON = "remedios.json";
+    public static final String ARQUIVO_HISTORICO = "historico.log";
+    public static final String ARQUIVO_DOSES = "doses.dat";
+
+    // Heap aproximado de cada remédio carregado, com os componentes da tela ligados
+    private static final long BYTES_POR_REMEDIO = 700;
+    private static final long BYTES_FIXOS = 64 * 1024;
+    private static final long LIMITE_DESFAZER = 16 * 1024 * 1024;
+
+    private final Path arquivoDados;
+    private final Path arquivoDadosJson;
+    private final RepositorioRemedios repositorio = new RepositorioRemedios();
+    private final ResumoTomados resumoTomados = new ResumoTomados(repositorio);
+    private final HistoricoDoses historicoDoses;
+    private final EstatisticasAdesao estatisticas;
+    private final HistoricoAcoes historico;
+    private final DesfazerRefazer desfazer = new DesfazerRefazer(repositorio, LIMITE_DESFAZER);
+    private volatile DiarioRemedios diario;
+    private volatile RemediosConcorrentes compartilhado;
+    private VigiaArquivos vigiaArquivos;
+    // Componentes da tela, criados quando o paciente é mostrado pela primeira vez e
+    // mantidos com o núcleo, para que voltar a ele pelo cache não os refaça
+    private IndicePesquisa indicePesquisa;
+    private AgendadorDoses agendador;
+    private FilteredList<Remedio> filtrados;
+    private SortedList<Remedio> ordenados;
+    private Consumer<String> aoFalhar = System.err::println;
+    private boolean carregado;
+
+    /** Os arquivos de dados ficam na pasta informada. */
+    public NucleoRemedios(Path pasta) {
+        this.arquivoDados = pasta.resolve(ARQUIVO_DADOS);
+        this.arquivoDadosJson = pasta.resolve(ARQUIVO_DADOS_JSON);
+        this.historicoDoses = new HistoricoDoses(pasta.resolve(ARQUIVO_DOSES), msg -> aoFalhar.accept(msg));
+        this.estatisticas = new EstatisticasAdesao(repositorio, historicoDoses);
+        this.historico = new HistoricoAcoes(pasta.resolve(ARQUIVO_HISTORICO), msg -> aoFalhar.accept(msg));
+        // Toda marcação passa por aqui, venha da tabela, da API ou de um desfazer
+        repositorio.getAlteracoes().adicionar((r, campo, antes) -> {
+            if (campo == Remedio.Campo.TOMADO) {
+                tomadoAlterado(r);
+            }
+        });
+    }
+
+    /** Recebe as mensagens de falha de gravação que não têm a quem ser devolvidas. */
+    public void setAoFalhar(Consumer<String> aoFalhar) {
+        this.aoFalhar = aoFalhar;
+    }
+
+    /**
+     * Visão da lista para outras threads, criada na primeira chamada; deve ser
+     * chamado na thread da lista, que é a que {@code threadDaLista} executa.
+     */
+    public RemediosConcorrentes compartilhar(Executor threadDaLista) {
+        if (compartilhado == null) {
+            compartilhado = new RemediosConcorrentes(this, threadDaLista);
+        }
+        return compartilhado;
+    }
+
+    public RepositorioRemedios getRepositorio() { return repositorio; }
+    public ResumoTomados getResumoTomados() { return resumoTomados; }
+    public EstatisticasAdesao getEstatisticas() { return estatisticas; }
+    public HistoricoAcoes getHistorico() { return historico; }
+    public DesfazerRefazer getDesfazer() { return desfazer; }
+    public HistoricoDoses getHistoricoDoses() { return historicoDoses; }
+    public Path getArquivoDados() { return arquivoDados; }
+    /** O agendador de {@link #agendar}, ou {@code null} se o paciente ainda não foi mostrado. */
+    public AgendadorDoses getAgendador() { return agendador; }
+
+    /** Índice de pesquisa da lista, criado na primeira chamada. */
+    public IndicePesquisa getIndicePesquisa() {
+        if (indicePesquisa == null) {
+            indicePesquisa = new IndicePesquisa(repositorio);
+        }
+        return indicePesquisa;
+    }
+
+    /**
+     * Agendador de doses da lista, criado na primeira chamada com estes
+     * parâmetros (as seguintes devolvem o mesmo) e encerrado em {@link #fechar()}.
+     */
+    public AgendadorDoses agendar(LocalTime primeiraDose, Executor executorAvisos,
+                                  Consumer<List<AgendadorDoses.Dose>> aoVencer) {
+        if (agendador == null) {
+            agendador = new AgendadorDoses(repositorio, historicoDoses, primeiraDose, executorAvisos, aoVencer);
+        }
+        return agendador;
+    }
+
+    /** A lista como a tabela mostra: filtrada pela pesquisa e depois ordenada, criada na primeira chamada. */
+    public SortedList<Remedio> getOrdenados() {
+        if (ordenados == null) {
+            filtrados = new FilteredList<>(repositorio.getRemedios());
+            ordenados = new SortedList<>(filtrados);
+        }
+        return ordenados;
+    }
+
+    /** A lista filtrada por trás de {@link #getOrdenados()}. */
+    public FilteredList<Remedio> getFiltrados() {
+        getOrdenados();
+        return filtrados;
+    }
+
+    // ---- Persistência ----
+
+    /**
+     * Abre o diário, reaplicando o que tiver ficado pendente (segundo plano).
+     * Depois disso {@link #getArquivoDados()} reflete todo o estado salvo e
+     * pode ser lido; ao terminar a leitura, chame {@link #passarAGravar()}.
+     */
+    public void abrirDiario(Consumer<String> aoFalhar) throws IOException {
+        diario = DiarioRemedios.abrir(arquivoDados, arquivoDadosJson, aoFalhar);
+    }
+
+    /** Liga o diário à lista; sem isto nenhuma alteração é salva. */
+    public void passarAGravar() {
+        diario.observar(repositorio);
+        desfazer.ligar();
+        carregado = true;
+    }
+
+    /** Se a lista já foi carregada e está sendo gravada. */
+    public boolean isCarregado() {
+        return carregado;
+    }
+
+    /** Estimativa do heap ocupado por este núcleo, para o cache de pacientes. */
+    public long estimarMemoria() {
+        return BYTES_FIXOS + repositorio.getRemedios().size() * BYTES_POR_REMEDIO + desfazer.estimarMemoria();
+    }
+
+    /**
+     * Abre o diário e lê de uma vez a lista salva (segundo plano). Os remédios
+     * lidos entram na lista por {@link #concluirCarga(List)}, na thread dela.
+     */
+    public List<Remedio> lerDados(Consumer<String> aoFalhar) throws IOException {
+        abrirDiario(aoFalhar);
+        Diagnostico.Carga evento = new Diagnostico.Carga(arquivoDados);
+        List<Remedio> lidos = new ArrayList<>();
+        DiarioRemedios.lerSnapshot(arquivoDados, lidos::add);
+        evento.bytes = Files.exists(arquivoDados) ? Files.size(arquivoDados) : 0;
+        evento.remedios = lidos.size();
+        evento.concluir();
+        return lidos;
+    }
+
+    /** Põe na lista os remédios de {@link #lerDados(Consumer)} e liga o diário; thread da lista. */
+    public void concluirCarga(List<Remedio> lidos) {
+        repositorio.getRemedios().addAll(lidos);
+        passarAGravar();
+    }
+
+    /** Abre o histórico de doses e calcula as estatísticas de adesão (segundo plano). */
+    public void abrirHistoricoDoses() throws IOException {
+        historicoDoses.abrir();
+        estatisticas.recalcular();
+    }
+
+    /**
+     * Passa a acompanhar o snapshot e o {@value #ARQUIVO_DADOS_JSON} da pasta:
+     * quando um deles é alterado por outro programa, a versão nova é
+     * comparada em segundo plano com a lista e só os remédios alterados são
+     * aplicados, como uma ação que pode ser desfeita (veja {@link MesclagemExterna}).
+     * Um {@value #ARQUIVO_DADOS_JSON} incorporado vira cópia de segurança (.bak),
+     * como na conversão da primeira abertura. Deve ser chamado na thread da
+     * lista, depois de {@link #passarAGravar()}.
+     */
+    public void vigiarArquivos(Executor threadDaLista) throws IOException {
+        if (vigiaArquivos == null) {
+            vigiaArquivos = new VigiaArquivos(Set.of(arquivoDados, arquivoDadosJson),
+                    arquivo -> alteradoPorFora(arquivo, threadDaLista));
+            vigiaArquivos.iniciar();
+        }
+    }
+
+    // Thread da vigia: a versão externa é lida e comparada aqui; a lista só é tocada na thread dela
+    private void alteradoPorFora(Path arquivo, Executor threadDaLista) {
+        boolean snapshot = arquivo.getFileName().equals(arquivoDados.getFileName());
+        try {
+            if (snapshot ? !diario.isSubstituido() : !Files.exists(arquivo)) {
+                return;
+            }
+            VersaoArquivo base = diario.aguardarBase();
+            List<Remedio> externos = new ArrayList<>();
+            long geracaoExterna = DiarioRemedios.lerSnapshot(arquivo, externos::add);
+            if (MesclagemExterna.temIdsDesconhecidos(externos, base)) {
+                // Linhas sem id (ou novas) são associadas pelo nome aos remédios da lista
+                Map<String, MesclagemExterna.Local> locais = CompletableFuture
+                        .supplyAsync(() -> MesclagemExterna.porNome(repositorio), threadDaLista).get();
+                externos = MesclagemExterna.associarPorNome(externos, base, locais);
+            }
+            MesclagemExterna.Diferenca diferenca = MesclagemExterna.comparar(externos, base);
+            threadDaLista.execute(() -> aplicarExterna(arquivo, snapshot, geracaoExterna, diferenca));
+        } catch (IOException ex) {
+            // Se o arquivo ainda estava sendo gravado, o fim da gravação gera um aviso novo
+            aoFalhar.accept("Falha ao ler " + arquivo.getFileName() + " alterado por fora: " + ex.getMessage());
+        } catch (InterruptedException ex) {
+            // Vigia encerrada enquanto esperava a thread da lista
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | RuntimeException ex) {
+            // Sem isto a exceção encerraria a thread da vigia sem aviso
+            Throwable causa = ex instanceof ExecutionException && ex.getCause() != null ? ex.getCause() : ex;
+            aoFalhar.accept("Falha ao mesclar " + arquivo.getFileName() + " alterado por fora: " + causa);
+        }
+    }
+
+    private void aplicarExterna(Path arquivo, boolean snapshot, long geracaoExterna,
+                                MesclagemExterna.Diferenca diferenca) {
+        if (vigiaArquivos == null) {
+            // Fechado enquanto a comparação rodava
+            return;
+        }
+        MesclagemExterna.Resultado[] resultado = {null};
+        if (!diferenca.isVazia()) {
+            acao("Alterações externas em " + arquivo.getFileName(),
+                    () -> resultado[0] = MesclagemExterna.aplicar(repositorio, diferenca));
+        }
+        diario.adotarBase(diferenca.externa());
+        if (snapshot) {
+            // O snapshot de fora é substituído por um com a lista já mesclada
+            diario.compactar(geracaoExterna);
+        } else {
+            try {
+                Files.move(arquivo, Path.of(arquivo + ".bak"), StandardCopyOption.REPLACE_EXISTING);
+            } catch (IOException ex) {
+                aoFalhar.accept("Falha ao mover " + arquivo.getFileName() + ": " + ex.getMessage());
+            }
+        }
+        if (resultado[0] == null) {
+            return;
+        }
+        MesclagemExterna.Resultado r = resultado[0];
+        registrar("Alterações externas em " + arquivo.getFileName() + ": " + r.alterados() + " alterado(s), "
+                + r.adicionados() + " incluído(s), " + r.removidos() + " removido(s)");
+        if (!r.conflitos().isEmpty()) {
+            registrar("Conflitos com alterações externas: " + r.conflitos().size());
+            StringBuilder b = new StringBuilder();
+            r.conflitos().stream().limit(10).forEach(c -> b.append("\n- ").append(c));
+            if (r.conflitos().size() > 10) {
+                b.append("\n... e mais ").append(r.conflitos().size() - 10);
+            }
+            aoFalhar.accept(arquivo.getFileName() + " foi alterado por fora; nos remédios abaixo,"
+                    + " alterados também aqui, foi mantida a versão deste programa:" + b);
+        }
+    }
+
+    /** Grava o que estiver pendente e fecha os arquivos. */
+    public void fechar() {
+        if (vigiaArquivos != null) {
+            vigiaArquivos.parar();
+            vigiaArquivos = null;
+        }
+        if (compartilhado != null) {
+            compartilhado.fechar();
+        }
+        if (agendador != null) {
+            agendador.encerrar();
+        }
+        if (indicePesquisa != null) {
+            indicePesquisa.desligar();
+        }
+        // Sem alterações desde o último snapshot, nada é regravado
+        if (diario != null && diario.fechar()) {
+            registrar("Dados salvos automaticamente");
+        }
+        historicoDoses.fechar();
+        historico.fechar();
+    }
+
+    /**
+     * Cópia dos remédios, que pode ser lida em outra thread enquanto a lista
+     * continua sendo alterada (para uma exportação, por exemplo).
+     */
+    public List<Remedio> copiarLista() {
+        List<Remedio> copia = new ArrayList<>(repositorio.getRemedios().size());
+        for (Remedio r : repositorio.getRemedios()) {
+            copia.add(r.copiar());
+        }
+        return copia;
+    }
+
+    // ---- Operações ----
+
+    /**
+     * @throws IllegalArgumentException com a mensagem para o usuário, se o nome
+     *                                  estiver vazio ou já existir
+     */
+    public Remedio adicionar(String nome, String observacoes, String dosagem, String frequencia) {
+        if (nome == null || nome.isBlank()) {
+            throw new IllegalArgumentException("Nome do remédio não pode estar vazio!");
+        }
+        Remedio novo = new Remedio(nome, observacoes, dosagem, frequencia);
+        if (repositorio.existeNome(nome)) {
+            throw new IllegalArgumentException("Já existe um remédio com este nome!");
+        }
+        acao("Adição de " + nome, () -> repositorio.adicionar(novo));
+        registrar("Adicionado: " + nome);
+        return novo;
+    }
+
+    /** @throws IllegalArgumentException como em {@link #adicionar} */
+    public void editar(Remedio remedio, String nome, String observacoes, String dosagem, String frequencia) {
+        if (nome == null || nome.isBlank()) {
+            throw new IllegalArgumentException("Nome do remédio não pode estar vazio!");
+        }
+        if (!repositorio.nomeDisponivel(nome, remedio)) {
+            throw new IllegalArgumentException("Já existe um remédio com este nome!");
+        }
+        acao("Edição de " + remedio.getNome(), () -> {
+            remedio.setNome(nome);
+            remedio.setObservacoes(observacoes);
+            remedio.setDosagem(dosagem);
+            remedio.setFrequencia(frequencia);
+        });
+        registrar("Editado: " + remedio.getNome());
+    }
+
+    public Remedio remover(int indice) {
+        Remedio removido = repositorio.getRemedios().get(indice);
+        acao("Remoção de " + removido.getNome(), () -> repositorio.remover(indice));
+        registrar("Removido: " + removido.getNome());
+        return removido;
+    }
+
+    /** Remove os remédios numa única alteração da lista e do diário; o desfazer os devolve juntos. */
+    public void removerVarios(List<Remedio> remedios) {
+        if (remedios.isEmpty()) {
+            return;
+        }
+        String descricao = remedios.size() == 1
+                ? "Remoção de " + remedios.get(0).getNome()
+                : "Remoção de " + remedios.size() + " remédios";
+        acao(descricao, () -> repositorio.removerVarios(remedios));
+        registrar(remedios.size() == 1
+                ? "Removido: " + remedios.get(0).getNome()
+                : "Removidos " + remedios.size() + " remédios");
+    }
+
+    /** Põe o remédio entre os vizinhos da tabela; ver {@link RepositorioRemedios#mover}. */
+    public void mover(Remedio movido, Remedio anterior, Remedio seguinte) {
+        acao("Reordenação de " + movido.getNome(), () -> repositorio.mover(movido, anterior, seguinte));
+    }
+
+    /** Desfaz o último passo do histórico; devolve a descrição dele, ou {@code null} se não há o que desfazer. */
+    public String desfazer() {
+        String descricao = desfazer.desfazer();
+        if (descricao != null) {
+            registrar("Desfeito: " + descricao);
+        }
+        return descricao;
+    }
+
+    /** Refaz o último passo desfeito; devolve a descrição dele, ou {@code null} se não há o que refazer. */
+    public String refazer() {
+        String descricao = desfazer.refazer();
+        if (descricao != null) {
+            registrar("Refeito: " + descricao);
+        }
+        return descricao;
+    }
+
+    // Um passo do desfazer e, no diário, uma única entrada
+    private void acao(String descricao, Runnable alteracoes) {
+        desfazer.iniciarGrupo(descricao);
+        try {
+            repositorio.getAlteracoes().emLote(alteracoes);
+        } finally {
+            desfazer.concluirGrupo();
+        }
+    }
+
+    /**
+     * Altera os campos informados de todos os remédios; {@code null} mantém o
+     * valor de cada um. É gravado como uma única entrada do diário.
+     */
+    public void editarVarios(List<Remedio> remedios, String dosagem, String frequencia, String observacoes) {
+        if (remedios.isEmpty() || (dosagem == null && frequencia == null && observacoes == null)) {
+            return;
+        }
+        acao("Edição de " + remedios.size() + " remédios", () -> {
+            for (Remedio r : remedios) {
+                if (dosagem != null) {
+                    r.setDosagem(dosagem);
+                }
+                if (frequencia != null) {
+                    r.setFrequencia(frequencia);
+                }
+                if (observacoes != null) {
+                    r.setObservacoes(observacoes);
+                }
+            }
+        });
+        registrar("Editados " + remedios.size() + " remédios");
+    }
+
+    /**
+     * Marca ou desmarca o remédio; o horário, a dose no histórico e o registro
+     * da ação são feitos em seguida, como em qualquer alteração de "tomado".
+     */
+    public void marcarTomado(Remedio remedio, boolean tomado) {
+        remedio.setTomado(tomado);
+    }
+
+    /**
+     * Marca ou desmarca todos num lote: a lista de tomados e o diário mudam
+     * uma vez só e a ação entra no histórico como uma linha. Devolve quantos mudaram.
+     */
+    public int marcarTomados(List<Remedio> remedios, boolean tomado) {
+        int[] alterados = {0};
+        acao((tomado ? "Marcação de " : "Desmarcação de ") + remedios.size() + " remédios", () -> {
+            for (Remedio r : remedios) {
+                if (r.isTomado() != tomado) {
+                    r.setTomado(tomado);
+                    alterados[0]++;
+                }
+            }
+        });
+        if (alterados[0] > 0) {
+            registrar((tomado ? "Marcados como tomados: " : "Desmarcados: ") + alterados[0] + " remédios");
+        }
+        return alterados[0];
+    }
+
+    // Completa a marcação (ou desmarcação): preenche o horário, grava a dose no histórico e registra a ação
+    private void tomadoAlterado(Remedio remedio) {
+        try {
+            if (remedio.isTomado()) {
+                remedio.setDataHoraTomado(LocalDateTime.now().format(Remedio.FORMATO_DATA_HORA));
+                estatisticas.registrarDose(remedio.getId());
+                registrarAvulsa("Marcado como tomado: " + remedio.getNome());
+            } else {
+                remedio.setDataHoraTomado("");
+                estatisticas.removerDose(remedio.getId());
+                registrarAvulsa("Desmarcado: " + remedio.getNome());
+            }
+        } catch (IOException ex) {
+            aoFalhar.accept("Falha ao gravar histórico de doses: " + ex.getMessage());
+        }
+    }
+
+    public int contarDosesSemana(Remedio remedio) throws IOException {
+        int de = HistoricoDoses.minuto(LocalDate.now().minusDays(6));
+        return historicoDoses.doses(remedio.getId(), de, HistoricoDoses.minutoAtual() + 1).length;
+    }
+
+    public void registrar(String mensagem) {
+        historico.registrar(mensagem);
+    }
+
+    // Num lote, a ação é registrada uma vez só, por quem abriu o lote
+    private void registrarAvulsa(String mensagem) {
+        if (!repositorio.getAlteracoes().isEmLote()) {
+            registrar(mensagem);
+        }
+    }
+}
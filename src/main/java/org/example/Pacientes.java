@@ -0,0 +1,181 @@
+package org.example;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.google.gson.reflect.TypeToken;
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * Perfis de pacientes. Cada paciente tem a própria pasta em {@value #PASTA},
+ * com os mesmos arquivos que um {@link NucleoRemedios} usa, e só é carregado
+ * quando selecionado.
+ *
+ * Ao iniciar só o índice (id e nome de cada paciente) é lido. Os núcleos
+ * abertos ficam num cache LRU limitado por uma estimativa de memória; o
+ * paciente que sai do cache é fechado, e o diário dele só regrava o
+ * snapshot se houve alteração.
+ *
+ * Deve ser usado na thread do JavaFX, como o próprio núcleo.
+ */
+public class Pacientes {
+
+    public static final String PASTA = "pacientes";
+    private static final String ARQUIVO_INDICE = "pacientes.json";
+    // Arquivos da versão de paciente único, que passam para o primeiro paciente
+    private static final String ARQUIVOS_ANTIGOS = "{remedios.bin*,remedios.json*,historico.log*,doses.dat}";
+
+    public record Paciente(String id, String nome) {
+        @Override
+        public String toString() {
+            return nome;
+        }
+    }
+
+    private final Path pasta;
+    private final long orcamentoMemoria;
+    private final Gson gson = new Gson();
+    private final ObservableList<Paciente> lista = FXCollections.observableArrayList();
+    private final ObservableList<Paciente> listaSomenteLeitura = FXCollections.unmodifiableObservableList(lista);
+    // Ordem de acesso: o primeiro é o usado há mais tempo
+    private final LinkedHashMap<String, NucleoRemedios> abertos = new LinkedHashMap<>(16, 0.75f, true);
+
+    private Pacientes(Path pasta, long orcamentoMemoria) {
+        this.pasta = pasta;
+        this.orcamentoMemoria = orcamentoMemoria;
+    }
+
+    /**
+     * Lê o índice de pacientes em {@code raiz}/{@value #PASTA}. Na primeira vez, os
+     * dados da versão de paciente único que estiverem em {@code raiz} viram o
+     * primeiro paciente; sem dados, é criado um paciente vazio.
+     *
+     * @param orcamentoMemoria memória estimada que os pacientes abertos podem ocupar;
+     *                         o paciente atual nunca sai do cache
+     */
+    public static Pacientes abrir(Path raiz, long orcamentoMemoria) throws IOException {
+        Pacientes p = new Pacientes(raiz.resolve(PASTA), orcamentoMemoria);
+        Path indice = p.pasta.resolve(ARQUIVO_INDICE);
+        if (Files.exists(indice)) {
+            try (Reader reader = Files.newBufferedReader(indice, StandardCharsets.UTF_8)) {
+                List<Paciente> lidos = p.gson.fromJson(reader, new TypeToken<List<Paciente>>() { }.getType());
+                if (lidos != null) {
+                    p.lista.setAll(lidos);
+                }
+            } catch (JsonParseException ex) {
+                throw new IOException("índice de pacientes inválido: " + indice, ex);
+            }
+        }
+        if (p.lista.isEmpty()) {
+            // O índice só é gravado depois da migração; se ela for interrompida, é retomada
+            Paciente primeiro = new Paciente("1", "Paciente 1");
+            Path pastaPrimeiro = p.pasta.resolve(primeiro.id());
+            Files.createDirectories(pastaPrimeiro);
+            migrar(raiz, pastaPrimeiro);
+            p.lista.add(primeiro);
+            p.gravarIndice();
+        }
+        return p;
+    }
+
+    public ObservableList<Paciente> getLista() {
+        return listaSomenteLeitura;
+    }
+
+    /** @throws IllegalArgumentException com a mensagem para o usuário, se o nome estiver vazio ou já existir */
+    public Paciente criar(String nome) throws IOException {
+        if (nome == null || nome.isBlank()) {
+            throw new IllegalArgumentException("Nome do paciente não pode estar vazio!");
+        }
+        String chave = RepositorioRemedios.chave(nome);
+        long maiorId = 0;
+        for (Paciente p : lista) {
+            if (RepositorioRemedios.chave(p.nome()).equals(chave)) {
+                throw new IllegalArgumentException("Já existe um paciente com este nome!");
+            }
+            maiorId = Math.max(maiorId, Long.parseLong(p.id()));
+        }
+        Paciente novo = new Paciente(String.valueOf(maiorId + 1), nome.strip());
+        Files.createDirectories(pasta.resolve(novo.id()));
+        lista.add(novo);
+        try {
+            gravarIndice();
+        } catch (IOException ex) {
+            lista.remove(novo);
+            throw ex;
+        }
+        return novo;
+    }
+
+    /**
+     * Núcleo do paciente, do cache ou recém-criado. Um núcleo novo ainda não
+     * foi carregado ({@link NucleoRemedios#isCarregado()}); quem chama faz a carga.
+     */
+    public NucleoRemedios abrir(Paciente paciente) {
+        return abertos.computeIfAbsent(paciente.id(), id -> new NucleoRemedios(pasta.resolve(id)));
+    }
+
+    /** Fecha os pacientes usados há mais tempo até o cache caber no orçamento de memória. */
+    public void liberarExcedente(NucleoRemedios atual) {
+        long total = 0;
+        for (NucleoRemedios n : abertos.values()) {
+            total += n.estimarMemoria();
+        }
+        for (Iterator<NucleoRemedios> it = abertos.values().iterator(); it.hasNext() && total > orcamentoMemoria; ) {
+            NucleoRemedios n = it.next();
+            if (n != atual) {
+                total -= n.estimarMemoria();
+                it.remove();
+                n.fechar();
+            }
+        }
+    }
+
+    /** Tira o paciente do cache e fecha o núcleo dele, por exemplo depois de uma carga com falha. */
+    public void descartar(Paciente paciente) {
+        NucleoRemedios n = abertos.remove(paciente.id());
+        if (n != null) {
+            n.fechar();
+        }
+    }
+
+    /** Fecha todos os pacientes abertos; só os alterados são gravados. */
+    public void fechar() {
+        abertos.values().forEach(NucleoRemedios::fechar);
+        abertos.clear();
+    }
+
+    private void gravarIndice() throws IOException {
+        Path indice = pasta.resolve(ARQUIVO_INDICE);
+        Path temporario = Path.of(indice + ".tmp");
+        try (Writer w = Files.newBufferedWriter(temporario, StandardCharsets.UTF_8)) {
+            gson.toJson(new ArrayList<>(lista), w);
+        }
+        Files.move(temporario, indice, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static void migrar(Path raiz, Path destino) throws IOException {
+        List<Path> antigos = new ArrayList<>();
+        try (DirectoryStream<Path> arquivos = Files.newDirectoryStream(raiz, ARQUIVOS_ANTIGOS)) {
+            arquivos.forEach(antigos::add);
+        }
+        for (Path arquivo : antigos) {
+            if (Files.isRegularFile(arquivo)) {
+                Files.move(arquivo, destino.resolve(arquivo.getFileName()));
+            }
+        }
+    }
+}
@@ -0,0 +1,312 @@
+package org.example;
+
+import com.google.gson.Gson;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Processamento em lote, sem interface: lê um ou mais arquivos de remédios
+ * (JSON exportado ou snapshot binário), descarta nomes duplicados,
+ * opcionalmente marca todos como tomados, calcula estatísticas e grava o
+ * resultado em JSON — tudo numa única passada, sem manter a lista inteira em memória.
+ *
+ * Os nomes seguem a mesma regra da janela ({@link IndiceNomes}): um nome já
+ * aceito, sem diferenciar maiúsculas, é descartado como duplicado, como na
+ * importação. O arquivo de saída é gravado num temporário e só substitui o
+ * destino no fim, então uma falha no meio não deixa um arquivo truncado.
+ *
+ * A leitura é sequencial e vai formando blocos; cada bloco é entregue a um
+ * grupo de threads, que normalizam os nomes, marcam e já serializam os
+ * remédios. Uma thread de escrita consome os blocos na ordem de leitura,
+ * descarta os duplicados (o primeiro de cada nome fica) e grava. A fila
+ * entre a leitura e a escrita é limitada, então a leitura espera quando a
+ * escrita fica para trás.
+ */
+public class ProcessadorLote {
+
+    private static final int TAMANHO_BLOCO = 4_096;
+
+    public record Opcoes(List<Path> entradas, Path saida,
+                         boolean marcarTomados, boolean renovarIds, int threads) { }
+
+    public record Resultado(long lidos, long gravados, long duplicados, long tomados,
+                            Map<String, Long> porFrequencia, long milissegundos) { }
+
+    // Bloco já processado pelas threads: nome e JSON de cada remédio
+    private record Bloco(String[] nomes, String[] json, boolean[] tomados, String[] frequencias) { }
+
+    private static final Bloco FIM = new Bloco(null, null, null, null);
+
+    private final Opcoes opcoes;
+    private final Gson gson = RemedioTypeAdapter.criarGson();
+    private final String agora = LocalDateTime.now().format(Remedio.FORMATO_DATA_HORA);
+
+    public ProcessadorLote(Opcoes opcoes) {
+        this.opcoes = opcoes;
+    }
+
+    public Resultado executar() throws IOException {
+        long inicio = System.nanoTime();
+        ExecutorService trabalhadores = Executors.newFixedThreadPool(opcoes.threads(), r -> {
+            Thread t = new Thread(r, "lote-trabalhador");
+            t.setDaemon(true);
+            return t;
+        });
+        BlockingQueue<Future<Bloco>> fila = new ArrayBlockingQueue<>(opcoes.threads() * 2);
+        Escrita escrita = new Escrita(fila);
+        FutureTask<Void> tarefaEscrita = new FutureTask<>(escrita);
+        Thread escritor = new Thread(tarefaEscrita, "lote-escritor");
+        escritor.start();
+
+        long[] lidos = {0};
+        try {
+            List<Remedio> bloco = new ArrayList<>(TAMANHO_BLOCO);
+            for (Path entrada : opcoes.entradas()) {
+                DiarioRemedios.lerSnapshot(entrada, r -> {
+                    if (opcoes.renovarIds()) {
+                        r.renovarId();
+                    }
+                    bloco.add(r);
+                    lidos[0]++;
+                    if (bloco.size() == TAMANHO_BLOCO) {
+                        enfileirar(fila, trabalhadores, new ArrayList<>(bloco), tarefaEscrita);
+                        bloco.clear();
+                    }
+                });
+            }
+            if (!bloco.isEmpty()) {
+                enfileirar(fila, trabalhadores, bloco, tarefaEscrita);
+            }
+            enfileirar(fila, null, null, tarefaEscrita);
+            tarefaEscrita.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("processamento interrompido", ex);
+        } catch (ExecutionException ex) {
+            throw causa(ex);
+        } catch (CancellationException ex) {
+            // A escrita parou antes do fim; o erro dela é o que interessa
+            try {
+                tarefaEscrita.get(0, TimeUnit.MILLISECONDS);
+            } catch (ExecutionException erro) {
+                throw causa(erro);
+            } catch (InterruptedException | TimeoutException | CancellationException ignorado) {
+                // Sem erro registrado na escrita
+            }
+            throw new IOException("processamento interrompido", ex);
+        } finally {
+            tarefaEscrita.cancel(true);
+            trabalhadores.shutdownNow();
+            // Quem apaga o temporário de uma escrita interrompida é a própria escrita
+            aguardar(escritor);
+        }
+        return new Resultado(lidos[0], escrita.gravados, escrita.duplicados, escrita.tomados,
+                escrita.porFrequencia, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - inicio));
+    }
+
+    private static void aguardar(Thread thread) {
+        boolean interrompida = false;
+        while (thread.isAlive()) {
+            try {
+                thread.join();
+            } catch (InterruptedException ex) {
+                interrompida = true;
+            }
+        }
+        if (interrompida) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Erros das threads de trabalho chegam embrulhados duas vezes (trabalhador e escrita)
+    private static IOException causa(ExecutionException ex) {
+        Throwable causa = ex.getCause();
+        while (causa instanceof ExecutionException && causa.getCause() != null) {
+            causa = causa.getCause();
+        }
+        return causa instanceof IOException io ? io : new IOException(causa);
+    }
+
+    // Espera vaga na fila, mas desiste se a escrita já terminou com erro
+    private void enfileirar(BlockingQueue<Future<Bloco>> fila, ExecutorService trabalhadores,
+                            List<Remedio> bloco, Future<?> escrita) {
+        Future<Bloco> item = bloco == null
+                ? CompletableFuture.completedFuture(FIM)
+                : trabalhadores.submit(() -> processar(bloco));
+        try {
+            while (!fila.offer(item, 100, TimeUnit.MILLISECONDS)) {
+                if (escrita.isDone()) {
+                    throw new CancellationException();
+                }
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException();
+        }
+    }
+
+    private Bloco processar(List<Remedio> remedios) {
+        int n = remedios.size();
+        Bloco b = new Bloco(new String[n], opcoes.saida() == null ? null : new String[n],
+                new boolean[n], new String[n]);
+        for (int i = 0; i < n; i++) {
+            Remedio r = remedios.get(i);
+            if (opcoes.marcarTomados() && !r.isTomado()) {
+                r.setTomado(true);
+                r.setDataHoraTomado(agora);
+            }
+            b.nomes()[i] = r.getNome();
+            b.tomados()[i] = r.isTomado();
+            b.frequencias()[i] = r.getFrequencia() == null ? "" : r.getFrequencia();
+            if (b.json() != null) {
+                b.json()[i] = gson.toJson(r, Remedio.class);
+            }
+        }
+        return b;
+    }
+
+    private class Escrita implements Callable<Void> {
+        private final BlockingQueue<Future<Bloco>> fila;
+        private final IndiceNomes nomes = new IndiceNomes();
+        private final Map<String, Long> porFrequencia = new TreeMap<>();
+        private long gravados, duplicados, tomados;
+
+        Escrita(BlockingQueue<Future<Bloco>> fila) {
+            this.fila = fila;
+        }
+
+        @Override
+        public Void call() throws IOException, InterruptedException, ExecutionException {
+            Path temporario = opcoes.saida() == null ? null : Path.of(opcoes.saida() + ".tmp");
+            try {
+                gravar(temporario);
+                if (temporario != null) {
+                    Files.move(temporario, opcoes.saida(), StandardCopyOption.REPLACE_EXISTING);
+                }
+            } catch (IOException | InterruptedException | ExecutionException | RuntimeException ex) {
+                if (temporario != null) {
+                    Files.deleteIfExists(temporario);
+                }
+                throw ex;
+            }
+            return null;
+        }
+
+        private void gravar(Path destino) throws IOException, InterruptedException, ExecutionException {
+            try (Writer saida = destino == null ? null
+                    : new BufferedWriter(Files.newBufferedWriter(destino, StandardCharsets.UTF_8), 1 << 16)) {
+                if (saida != null) {
+                    saida.write("[");
+                }
+                for (Bloco b = fila.take().get(); b != FIM; b = fila.take().get()) {
+                    for (int i = 0; i < b.nomes().length; i++) {
+                        if (nomes.existe(b.nomes()[i])) {
+                            duplicados++;
+                            continue;
+                        }
+                        nomes.incluir(b.nomes()[i]);
+                        if (saida != null) {
+                            saida.write(gravados == 0 ? "\n" : ",\n");
+                            saida.write(b.json()[i]);
+                        }
+                        gravados++;
+                        if (b.tomados()[i]) {
+                            tomados++;
+                        }
+                        porFrequencia.merge(b.frequencias()[i], 1L, Long::sum);
+                    }
+                }
+                if (saida != null) {
+                    saida.write("\n]\n");
+                }
+            }
+        }
+    }
+
+    // ---- Linha de comando ----
+
+    /**
+     * Uso: {@code java -cp ... org.example.ProcessadorLote ENTRADA... [--saida ARQ.json]
+     * [--marcar-tomados] [--renovar-ids] [--threads N]}.
+     * Sempre imprime as estatísticas ao final. Os duplicados são sempre descartados;
+     * {@code --deduplicar} ainda é aceito, sem efeito, por compatibilidade. Fica fora de {@link Main} porque o
+     * lançador do Java recusa uma classe que estende Application sem o JavaFX no module path.
+     */
+    public static void main(String[] args) {
+        System.exit(executarLinhaDeComando(List.of(args)));
+    }
+
+    static int executarLinhaDeComando(List<String> args) {
+        List<Path> entradas = new ArrayList<>();
+        Path saida = null;
+        boolean marcar = false, renovar = false;
+        int threads = Runtime.getRuntime().availableProcessors();
+        try {
+            for (Iterator<String> it = args.iterator(); it.hasNext(); ) {
+                String arg = it.next();
+                switch (arg) {
+                    case "--saida" -> saida = Path.of(it.next());
+                    case "--deduplicar" -> { }
+                    case "--marcar-tomados" -> marcar = true;
+                    case "--renovar-ids" -> renovar = true;
+                    case "--threads" -> threads = Math.max(1, Integer.parseInt(it.next()));
+                    default -> {
+                        if (arg.startsWith("--")) {
+                            throw new IllegalArgumentException("opção desconhecida: " + arg);
+                        }
+                        entradas.add(Path.of(arg));
+                    }
+                }
+            }
+            if (entradas.isEmpty()) {
+                throw new IllegalArgumentException("nenhum arquivo de entrada");
+            }
+            for (Path entrada : entradas) {
+                if (!Files.isRegularFile(entrada)) {
+                    throw new IllegalArgumentException("arquivo não encontrado: " + entrada);
+                }
+            }
+        } catch (IllegalArgumentException | NoSuchElementException ex) {
+            System.err.println("Erro: " + ex.getMessage());
+            System.err.println("Uso: ProcessadorLote ENTRADA... [--saida ARQ.json] "
+                    + "[--marcar-tomados] [--renovar-ids] [--threads N]");
+            return 2;
+        }
+
+        try {
+            Resultado r = new ProcessadorLote(
+                    new Opcoes(entradas, saida, marcar, renovar, threads)).executar();
+            imprimir(r, saida);
+            return 0;
+        } catch (IOException ex) {
+            System.err.println("Falha no processamento: " + ex.getMessage());
+            return 1;
+        }
+    }
+
+    private static void imprimir(Resultado r, Path saida) {
+        System.out.printf("Lidos: %d%n", r.lidos());
+        if (r.duplicados() > 0) {
+            System.out.printf("Duplicados removidos: %d%n", r.duplicados());
+        }
+        System.out.printf("Total: %d%nTomados: %d%nPendentes: %d%nTaxa de conclusão: %.1f%%%n",
+                r.gravados(), r.tomados(), r.gravados() - r.tomados(),
+                ResumoTomados.taxaConclusao(r.gravados(), r.tomados()));
+        System.out.println("Por frequência:");
+        r.porFrequencia().forEach((f, n) -> System.out.printf("  %s: %d%n", f.isEmpty() ? "(sem)" : f, n));
+        if (saida != null) {
+            System.out.println("Gravado em: " + saida);
+        }
+        System.out.printf("Tempo: %d ms (%.0f remédios/s)%n", r.milissegundos(),
+                r.lidos() * 1000.0 / Math.max(1, r.milissegundos()));
+    }
+}
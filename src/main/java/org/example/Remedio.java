@@ -0,0 +1,259 @@
+package org.example;
+
+import javafx.beans.property.BooleanProperty;
+import javafx.beans.property.SimpleBooleanProperty;
+import javafx.beans.property.SimpleStringProperty;
+import javafx.beans.property.StringProperty;
+
+import java.io.Serializable;
+import java.time.format.DateTimeFormatter;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Um remédio da lista. Os valores ficam em campos simples e as properties
+ * do JavaFX só são criadas quando alguém as pede (uma célula visível da
+ * tabela, por exemplo); enquanto isso as alterações são avisadas por
+ * {@link AlteracoesRemedios}, que os componentes usam no lugar de um
+ * listener por property em cada remédio. Dosagens e frequências repetidas
+ * compartilham a mesma instância de String.
+ */
+public class Remedio implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /** Formato de {@link #getDataHoraTomado()}. */
+    public static final DateTimeFormatter FORMATO_DATA_HORA = DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm");
+
+    private static final AtomicLong PROXIMO_ID = new AtomicLong(1);
+    private static final int MAXIMO_VALORES_COMUNS = 4_096;
+    private static final Map<String, String> VALORES_COMUNS = new ConcurrentHashMap<>();
+
+    /** Campos que podem ser alterados, na ordem das colunas da tabela; a posição na tabela por último. */
+    public enum Campo { NOME, OBSERVACOES, DOSAGEM, FREQUENCIA, TOMADO, DATA_HORA_TOMADO, ORDEM }
+
+    private long id;
+    private String nome;
+    private String observacoes;
+    private String dosagem;
+    private String frequencia;
+    private boolean tomado;
+    private String dataHoraTomado = "";
+    // Chave da posição na tabela; 0 enquanto o repositório não atribuiu uma
+    private double ordem;
+
+    private transient AlteracoesRemedios alteracoes;
+    private transient StringProperty nomeProperty;
+    private transient StringProperty observacoesProperty;
+    private transient StringProperty dosagemProperty;
+    private transient StringProperty frequenciaProperty;
+    private transient BooleanProperty tomadoProperty;
+    private transient StringProperty dataHoraTomadoProperty;
+
+    public Remedio(String nome, String obs, String dosagem, String frequencia) {
+        this(PROXIMO_ID.getAndIncrement(), nome, obs, dosagem, frequencia);
+    }
+
+    // Usado na leitura dos dados persistidos, preservando o id gravado
+    public Remedio(long id, String nome, String obs, String dosagem, String frequencia) {
+        this.id = id;
+        PROXIMO_ID.accumulateAndGet(id + 1, Math::max);
+        this.nome = nome;
+        this.observacoes = obs;
+        this.dosagem = comum(dosagem);
+        this.frequencia = comum(frequencia);
+    }
+
+    public long getId() { return id; }
+
+    // Registros importados de outra instância recebem um id novo e entram no fim da tabela
+    public void renovarId() {
+        id = PROXIMO_ID.getAndIncrement();
+        ordem = 0;
+    }
+
+    public Remedio copiar() {
+        Remedio copia = new Remedio(id, nome, observacoes, dosagem, frequencia);
+        copia.tomado = tomado;
+        copia.dataHoraTomado = dataHoraTomado;
+        copia.ordem = ordem;
+        return copia;
+    }
+
+    /**
+     * Posição na tabela: os remédios aparecem em ordem crescente desta chave.
+     * Mover um remédio só troca a chave dele por uma entre as dos vizinhos.
+     */
+    public double getOrdem() { return ordem; }
+    public void setOrdem(double value) {
+        if (value != ordem) {
+            double antes = ordem;
+            ordem = value;
+            avisar(Campo.ORDEM, antes);
+        }
+    }
+
+    // Primeira chave, dada pelo repositório quando o remédio entra sem uma; não é uma alteração
+    void atribuirOrdem(double value) { ordem = value; }
+
+    // Chamado pelo repositório quando o remédio entra ou sai da lista
+    void setAlteracoes(AlteracoesRemedios alteracoes) { this.alteracoes = alteracoes; }
+
+    // Getters, setters e properties
+    public String getNome() { return nome; }
+    public void setNome(String value) { alterarTexto(Campo.NOME, nomeProperty, value); }
+    public StringProperty nomeProperty() {
+        if (nomeProperty == null) {
+            nomeProperty = new PropertyTexto(Campo.NOME, "nome");
+        }
+        return nomeProperty;
+    }
+
+    public String getObservacoes() { return observacoes; }
+    public void setObservacoes(String value) { alterarTexto(Campo.OBSERVACOES, observacoesProperty, value); }
+    public StringProperty observacoesProperty() {
+        if (observacoesProperty == null) {
+            observacoesProperty = new PropertyTexto(Campo.OBSERVACOES, "observacoes");
+        }
+        return observacoesProperty;
+    }
+
+    public String getDosagem() { return dosagem; }
+    public void setDosagem(String value) { alterarTexto(Campo.DOSAGEM, dosagemProperty, value); }
+    public StringProperty dosagemProperty() {
+        if (dosagemProperty == null) {
+            dosagemProperty = new PropertyTexto(Campo.DOSAGEM, "dosagem");
+        }
+        return dosagemProperty;
+    }
+
+    public String getFrequencia() { return frequencia; }
+    public void setFrequencia(String value) { alterarTexto(Campo.FREQUENCIA, frequenciaProperty, value); }
+    public StringProperty frequenciaProperty() {
+        if (frequenciaProperty == null) {
+            frequenciaProperty = new PropertyTexto(Campo.FREQUENCIA, "frequencia");
+        }
+        return frequenciaProperty;
+    }
+
+    public boolean isTomado() { return tomado; }
+    public void setTomado(boolean value) {
+        if (tomadoProperty != null) {
+            tomadoProperty.set(value);
+        } else if (value != tomado) {
+            tomado = value;
+            avisar(Campo.TOMADO, !value);
+        }
+    }
+    public BooleanProperty tomadoProperty() {
+        if (tomadoProperty == null) {
+            tomadoProperty = new SimpleBooleanProperty(this, "tomado", tomado) {
+                @Override
+                protected void invalidated() {
+                    boolean antes = tomado;
+                    tomado = get();
+                    if (antes != tomado) {
+                        avisar(Campo.TOMADO, antes);
+                    }
+                }
+            };
+        }
+        return tomadoProperty;
+    }
+
+    public String getDataHoraTomado() { return dataHoraTomado; }
+    public void setDataHoraTomado(String value) {
+        alterarTexto(Campo.DATA_HORA_TOMADO, dataHoraTomadoProperty, value);
+    }
+    public StringProperty dataHoraTomadoProperty() {
+        if (dataHoraTomadoProperty == null) {
+            dataHoraTomadoProperty = new PropertyTexto(Campo.DATA_HORA_TOMADO, "dataHoraTomado");
+        }
+        return dataHoraTomadoProperty;
+    }
+
+    // Com a property já criada, ela é o caminho da alteração e o aviso sai do invalidated()
+    private void alterarTexto(Campo campo, StringProperty property, String valor) {
+        if (property != null) {
+            property.set(valor);
+            return;
+        }
+        String antes = texto(campo);
+        if (!Objects.equals(antes, valor)) {
+            definirTexto(campo, valor);
+            avisar(campo, antes);
+        }
+    }
+
+    private String texto(Campo campo) {
+        return switch (campo) {
+            case NOME -> nome;
+            case OBSERVACOES -> observacoes;
+            case DOSAGEM -> dosagem;
+            case FREQUENCIA -> frequencia;
+            case DATA_HORA_TOMADO -> dataHoraTomado;
+            case TOMADO, ORDEM -> throw new IllegalArgumentException(campo.name());
+        };
+    }
+
+    private void definirTexto(Campo campo, String valor) {
+        switch (campo) {
+            case NOME -> nome = valor;
+            case OBSERVACOES -> observacoes = valor;
+            case DOSAGEM -> dosagem = comum(valor);
+            case FREQUENCIA -> frequencia = comum(valor);
+            case DATA_HORA_TOMADO -> dataHoraTomado = valor;
+            case TOMADO, ORDEM -> throw new IllegalArgumentException(campo.name());
+        }
+    }
+
+    private void avisar(Campo campo, Object antes) {
+        if (alteracoes != null) {
+            alteracoes.avisar(this, campo, antes);
+        }
+    }
+
+    // A tabela de valores comuns é limitada para que texto livre não a faça crescer sem fim
+    private static String comum(String valor) {
+        if (valor == null) {
+            return null;
+        }
+        String existente = VALORES_COMUNS.get(valor);
+        if (existente != null) {
+            return existente;
+        }
+        if (VALORES_COMUNS.size() >= MAXIMO_VALORES_COMUNS) {
+            return valor;
+        }
+        existente = VALORES_COMUNS.putIfAbsent(valor, valor);
+        return existente != null ? existente : valor;
+    }
+
+    private class PropertyTexto extends SimpleStringProperty {
+        private final Campo campo;
+
+        PropertyTexto(Campo campo, String nomeDaProperty) {
+            super(Remedio.this, nomeDaProperty, texto(campo));
+            this.campo = campo;
+        }
+
+        @Override
+        protected void invalidated() {
+            String antes = texto(campo);
+            String valor = get();
+            if (!Objects.equals(antes, valor)) {
+                definirTexto(campo, valor);
+                avisar(campo, antes);
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s - %s (%s) %s",
+                nome, dosagem, frequencia,
+                tomado ? "Tomado: " + dataHoraTomado : "Pendente");
+    }
+}
@@ -0,0 +1,105 @@
+package org.example;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+
+/**
+ * Serializa um {@link Remedio} como um objeto JSON plano.
+ * Também aceita o formato antigo, em que cada campo era gravado como
+ * a própria property do JavaFX ({"value": ...}).
+ */
+public class RemedioTypeAdapter extends TypeAdapter<Remedio> {
+
+    public static Gson criarGson() {
+        return new GsonBuilder()
+                .registerTypeAdapter(Remedio.class, new RemedioTypeAdapter())
+                .create();
+    }
+
+    @Override
+    public void write(JsonWriter out, Remedio r) throws IOException {
+        if (r == null) {
+            out.nullValue();
+            return;
+        }
+        out.beginObject();
+        out.name("id").value(r.getId());
+        out.name("nome").value(r.getNome());
+        out.name("observacoes").value(r.getObservacoes());
+        out.name("dosagem").value(r.getDosagem());
+        out.name("frequencia").value(r.getFrequencia());
+        out.name("tomado").value(r.isTomado());
+        out.name("dataHoraTomado").value(r.getDataHoraTomado());
+        out.name("ordem").value(r.getOrdem());
+        out.endObject();
+    }
+
+    @Override
+    public Remedio read(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        long id = 0;
+        String nome = null, observacoes = null, dosagem = null, frequencia = null;
+        String dataHoraTomado = "";
+        boolean tomado = false;
+        double ordem = 0;
+
+        in.beginObject();
+        while (in.hasNext()) {
+            switch (in.nextName()) {
+                case "id" -> id = in.nextLong();
+                case "nome" -> nome = lerTexto(in);
+                case "observacoes" -> observacoes = lerTexto(in);
+                case "dosagem" -> dosagem = lerTexto(in);
+                case "frequencia" -> frequencia = lerTexto(in);
+                case "tomado" -> tomado = Boolean.parseBoolean(lerTexto(in));
+                case "dataHoraTomado" -> dataHoraTomado = lerTexto(in);
+                case "ordem" -> ordem = in.nextDouble();
+                default -> in.skipValue();
+            }
+        }
+        in.endObject();
+
+        Remedio r = id > 0
+                ? new Remedio(id, nome, observacoes, dosagem, frequencia)
+                : new Remedio(nome, observacoes, dosagem, frequencia);
+        r.setTomado(tomado);
+        r.setDataHoraTomado(dataHoraTomado == null ? "" : dataHoraTomado);
+        r.atribuirOrdem(ordem);
+        return r;
+    }
+
+    // Lê um valor simples ou o "value" de uma property serializada no formato antigo
+    private static String lerTexto(JsonReader in) throws IOException {
+        switch (in.peek()) {
+            case NULL:
+                in.nextNull();
+                return null;
+            case BOOLEAN:
+                return String.valueOf(in.nextBoolean());
+            case BEGIN_OBJECT: {
+                String valor = null;
+                in.beginObject();
+                while (in.hasNext()) {
+                    if (in.nextName().equals("value")) {
+                        valor = lerTexto(in);
+                    } else {
+                        in.skipValue();
+                    }
+                }
+                in.endObject();
+                return valor;
+            }
+            default:
+                return in.nextString();
+        }
+    }
+}
@@ -0,0 +1,217 @@
+package org.example;
+
+import javafx.collections.ListChangeListener;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Visão da lista de remédios de um núcleo para outras threads (a API HTTP).
+ *
+ * A lista observável só pode ser tocada na thread do JavaFX. Aqui cada
+ * remédio tem uma cópia imutável num mapa concorrente, atualizada pela própria
+ * thread do JavaFX a cada alteração; leituras nunca passam por ela. A ordem
+ * da lista é publicada como um vetor de ids (cópia na escrita), mas só quando
+ * alguém a pede depois de uma mudança estrutural, para que cargas e
+ * importações não paguem por isso.
+ *
+ * As alterações pedidas por outras threads entram numa fila e são aplicadas
+ * em lote: um único {@code execute} na thread da lista atende todos os
+ * pedidos que chegarem até ele rodar, então muitos pedidos simultâneos viram
+ * uma só atualização da tela.
+ */
+public class RemediosConcorrentes {
+
+    /** Cópia imutável de um remédio. */
+    public record Registro(long id, String nome, String dosagem, String frequencia, String observacoes,
+                           boolean tomado, String dataHoraTomado) {
+        static Registro de(Remedio r) {
+            return new Registro(r.getId(), r.getNome(), r.getDosagem(), r.getFrequencia(),
+                    r.getObservacoes(), r.isTomado(), r.getDataHoraTomado());
+        }
+    }
+
+    private final NucleoRemedios nucleo;
+    private final Executor threadDaLista;
+    private final ConcurrentHashMap<Long, Registro> porId = new ConcurrentHashMap<>();
+    private final AtomicInteger tomados = new AtomicInteger();
+    private volatile long[] ordem = new long[0];
+    private volatile boolean ordemDesatualizada = true;
+    private volatile boolean fechado;
+
+    // Só na thread da lista
+    private final Map<Long, Remedio> remedioPorId = new HashMap<>();
+    private final ListChangeListener<Remedio> ouvinteLista = this::aoAlterarLista;
+    private final AlteracoesRemedios.Ouvinte ouvinteCampos = this::aoAlterar;
+
+    private final Queue<Runnable> pendentes = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean aplicacaoAgendada = new AtomicBoolean();
+
+    RemediosConcorrentes(NucleoRemedios nucleo, Executor threadDaLista) {
+        this.nucleo = nucleo;
+        this.threadDaLista = threadDaLista;
+        RepositorioRemedios repositorio = nucleo.getRepositorio();
+        repositorio.getRemedios().forEach(this::incluir);
+        repositorio.getRemedios().addListener(ouvinteLista);
+        repositorio.getAlteracoes().adicionar(ouvinteCampos);
+    }
+
+    /** Falso depois que o núcleo foi fechado; a visão deixa de acompanhar a lista. */
+    public boolean isAberto() {
+        return !fechado;
+    }
+
+    // ---- Leitura (qualquer thread) ----
+
+    public Registro buscar(long id) {
+        return porId.get(id);
+    }
+
+    public int getTotal() {
+        return porId.size();
+    }
+
+    public int getTomados() {
+        return tomados.get();
+    }
+
+    /** Remédios na ordem da tabela; só espera a thread da lista se a ordem mudou desde a última leitura. */
+    public CompletableFuture<List<Registro>> listar() {
+        CompletableFuture<long[]> ids = ordemDesatualizada
+                ? naThreadDaLista(this::publicarOrdem)
+                : CompletableFuture.completedFuture(ordem);
+        return ids.thenApply(vetor -> {
+            List<Registro> lista = new ArrayList<>(vetor.length);
+            for (long id : vetor) {
+                Registro r = porId.get(id);
+                // Removido depois da publicação da ordem
+                if (r != null) {
+                    lista.add(r);
+                }
+            }
+            return lista;
+        });
+    }
+
+    public EstatisticasAdesao.Resumo resumoAdesao() {
+        return nucleo.getEstatisticas().resumo();
+    }
+
+    // ---- Alteração (qualquer thread, aplicada na thread da lista) ----
+
+    /**
+     * Marca ou desmarca o remédio. O resultado traz o remédio já com o horário
+     * preenchido, ou falha com {@link NoSuchElementException} se o id não existe.
+     */
+    public CompletableFuture<Registro> marcarTomado(long id, boolean tomado) {
+        return naThreadDaLista(() -> {
+            Remedio r = remedioPorId.get(id);
+            if (r == null) {
+                throw new NoSuchElementException("remédio não encontrado: " + id);
+            }
+            nucleo.marcarTomado(r, tomado);
+            return porId.get(id);
+        });
+    }
+
+    private <T> CompletableFuture<T> naThreadDaLista(Callable<T> acao) {
+        CompletableFuture<T> resultado = new CompletableFuture<>();
+        pendentes.add(() -> {
+            try {
+                if (fechado) {
+                    // O núcleo foi fechado com o pedido na fila; a alteração não seria gravada
+                    throw new IllegalStateException("paciente fechado");
+                }
+                resultado.complete(acao.call());
+            } catch (Exception ex) {
+                resultado.completeExceptionally(ex);
+            }
+        });
+        if (aplicacaoAgendada.compareAndSet(false, true)) {
+            threadDaLista.execute(this::aplicarPendentes);
+        }
+        return resultado;
+    }
+
+    // Quem enfileirar depois do último poll encontra a flag livre e agenda outra rodada
+    private void aplicarPendentes() {
+        aplicacaoAgendada.set(false);
+        for (Runnable acao; (acao = pendentes.poll()) != null; ) {
+            acao.run();
+        }
+    }
+
+    // ---- Manutenção (thread da lista) ----
+
+    private long[] publicarOrdem() {
+        List<Remedio> lista = new ArrayList<>(nucleo.getRepositorio().getRemedios());
+        lista.sort(RepositorioRemedios.POR_ORDEM);
+        long[] ids = new long[lista.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = lista.get(i).getId();
+        }
+        ordem = ids;
+        ordemDesatualizada = false;
+        return ids;
+    }
+
+    // Primeiro todas as saídas, depois as entradas: numa substituição o mesmo remédio
+    // pode sair num trecho da alteração e voltar em outro
+    private void aoAlterarLista(ListChangeListener.Change<? extends Remedio> c) {
+        while (c.next()) {
+            if (!c.wasPermutated()) {
+                c.getRemoved().forEach(this::excluir);
+            }
+        }
+        c.reset();
+        while (c.next()) {
+            if (!c.wasPermutated()) {
+                c.getAddedSubList().forEach(this::incluir);
+            }
+        }
+        ordemDesatualizada = true;
+    }
+
+    private void incluir(Remedio r) {
+        remedioPorId.put(r.getId(), r);
+        Registro anterior = porId.put(r.getId(), Registro.de(r));
+        contar(anterior, r.isTomado());
+    }
+
+    private void excluir(Remedio r) {
+        if (remedioPorId.remove(r.getId(), r)) {
+            contar(porId.remove(r.getId()), false);
+        }
+    }
+
+    private void aoAlterar(Remedio r, Remedio.Campo campo, Object antes) {
+        if (remedioPorId.get(r.getId()) == r) {
+            contar(porId.put(r.getId(), Registro.de(r)), r.isTomado());
+        }
+    }
+
+    private void contar(Registro anterior, boolean tomadoAgora) {
+        int delta = (tomadoAgora ? 1 : 0) - (anterior != null && anterior.tomado() ? 1 : 0);
+        if (delta != 0) {
+            tomados.addAndGet(delta);
+        }
+    }
+
+    void fechar() {
+        fechado = true;
+        RepositorioRemedios repositorio = nucleo.getRepositorio();
+        repositorio.getRemedios().removeListener(ouvinteLista);
+        repositorio.getAlteracoes().remover(ouvinteCampos);
+    }
+}
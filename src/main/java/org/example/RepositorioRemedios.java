@@ -0,0 +1,206 @@
+package org.example;
+
+import javafx.collections.ListChangeListener;
+import javafx.collections.ObservableList;
+
+import java.util.*;
+
+/**
+ * Camada entre a interface e a lista de remédios.
+ *
+ * Liga cada remédio que entra na lista ao {@link AlteracoesRemedios} da lista,
+ * por onde os demais componentes acompanham as edições.
+ *
+ * Mantém um índice dos nomes ({@link IndiceNomes}, sem diferenciar maiúsculas) para que a
+ * verificação de duplicidade custe O(1). O índice acompanha a lista e as
+ * alterações de nome, então continua correto qualquer que seja
+ * o caminho da alteração (inclusão, edição, remoção, desfazer, arrastar ou
+ * importação). Conta ocorrências em vez de guardar um único remédio por
+ * nome porque arquivos antigos podem já conter nomes repetidos.
+ *
+ * A ordem da tabela é a de {@link Remedio#getOrdem()}, não a da lista: um
+ * remédio que entra sem chave recebe uma depois da maior, e mover um remédio
+ * ({@link #mover}) só troca a chave dele. A troca sai da lista como uma
+ * atualização daquele remédio, para que uma {@code SortedList} o reposicione.
+ */
+public class RepositorioRemedios {
+
+    /** Ordem da tabela. */
+    public static final Comparator<Remedio> POR_ORDEM = Comparator.comparingDouble(Remedio::getOrdem);
+
+    private final ListaRemedios remedios = new ListaRemedios();
+    private final IndiceNomes nomes = new IndiceNomes();
+    private final AlteracoesRemedios alteracoes = new AlteracoesRemedios();
+    private double maiorOrdem;
+    private final Set<Remedio> ordemAlteradaLote = Collections.newSetFromMap(new IdentityHashMap<>());
+
+    public RepositorioRemedios() {
+        remedios.addListener(this::aoAlterarLista);
+        alteracoes.adicionar(new AlteracoesRemedios.Ouvinte() {
+            @Override
+            public void alterado(Remedio r, Remedio.Campo campo, Object antes) {
+                if (campo == Remedio.Campo.NOME) {
+                    nomes.retirar((String) antes);
+                    nomes.incluir(r.getNome());
+                } else if (campo == Remedio.Campo.ORDEM) {
+                    aoAlterarOrdem(r);
+                }
+            }
+
+            @Override
+            public void loteConcluido() {
+                avisarOrdensDoLote();
+            }
+        });
+    }
+
+    // A posição vem do mapa da lista, em O(1). Num lote (uma reordenação, uma
+    // renumeração ou o desfazer delas) os avisos saem juntos, numa única alteração, no fim
+    private void aoAlterarOrdem(Remedio r) {
+        maiorOrdem = Math.max(maiorOrdem, r.getOrdem());
+        if (alteracoes.isEmLote()) {
+            ordemAlteradaLote.add(r);
+            return;
+        }
+        int i = remedios.indexOf(r);
+        if (i >= 0) {
+            remedios.avisarAtualizacao(i);
+        }
+    }
+
+    private void avisarOrdensDoLote() {
+        if (ordemAlteradaLote.isEmpty()) {
+            return;
+        }
+        int[] posicoes = new int[ordemAlteradaLote.size()];
+        int n = 0;
+        for (Remedio r : ordemAlteradaLote) {
+            int i = remedios.indexOf(r);
+            // Removido depois, no mesmo lote
+            if (i >= 0) {
+                posicoes[n++] = i;
+            }
+        }
+        ordemAlteradaLote.clear();
+        posicoes = Arrays.copyOf(posicoes, n);
+        Arrays.sort(posicoes);
+        remedios.avisarAtualizacao(posicoes);
+    }
+
+    public ObservableList<Remedio> getRemedios() {
+        return remedios;
+    }
+
+    public AlteracoesRemedios getAlteracoes() {
+        return alteracoes;
+    }
+
+    public static String chave(String nome) {
+        return nome == null ? "" : nome.strip().toLowerCase(Locale.ROOT);
+    }
+
+    public boolean existeNome(String nome) {
+        return nomes.existe(nome);
+    }
+
+    /** Se o remédio pode passar a se chamar {@code nome} sem colidir com outro. */
+    public boolean nomeDisponivel(String nome, Remedio proprio) {
+        return nomes.disponivel(nome, proprio.getNome());
+    }
+
+    /** Adiciona ao fim da lista; devolve false se já existir um remédio com o mesmo nome. */
+    public boolean adicionar(Remedio remedio) {
+        if (existeNome(remedio.getNome())) {
+            return false;
+        }
+        remedios.add(remedio);
+        return true;
+    }
+
+    public Remedio remover(int indice) {
+        return remedios.remove(indice);
+    }
+
+    /** Remove todos de uma vez, numa única alteração da lista. */
+    public void removerVarios(Collection<Remedio> removidos) {
+        Set<Remedio> conjunto = Collections.newSetFromMap(new IdentityHashMap<>());
+        conjunto.addAll(removidos);
+        remedios.removeAll(conjunto);
+    }
+
+    /**
+     * Põe o remédio entre dois vizinhos da tabela ({@code null} nas pontas),
+     * com uma chave no meio das deles. Quando não há mais espaço entre as
+     * duas chaves (depois de muitas divisões no mesmo lugar), todas são
+     * renumeradas, o que altera todos os remédios.
+     */
+    public void mover(Remedio movido, Remedio anterior, Remedio seguinte) {
+        double de = anterior == null ? 0 : anterior.getOrdem();
+        double ate = seguinte == null ? maiorOrdem + 2 : seguinte.getOrdem();
+        double meio = de + (ate - de) / 2;
+        if (meio > de && meio < ate) {
+            movido.setOrdem(meio);
+            return;
+        }
+        List<Remedio> ordenada = new ArrayList<>(remedios);
+        ordenada.sort(POR_ORDEM);
+        ordenada.remove(movido);
+        ordenada.add(seguinte == null ? ordenada.size() : ordenada.indexOf(seguinte), movido);
+        alteracoes.emLote(() -> {
+            for (int i = 0; i < ordenada.size(); i++) {
+                ordenada.get(i).setOrdem(i + 1);
+            }
+        });
+    }
+
+    /**
+     * Adiciona um lote verificando os nomes numa única passada: cada nome é
+     * comparado com o índice e com os nomes já aceitos do próprio lote.
+     * Os remédios em conflito não são adicionados e são devolvidos.
+     *
+     * @param substituir se verdadeiro, o lote substitui todo o conteúdo atual
+     */
+    public List<Remedio> adicionarLote(List<Remedio> lote, boolean substituir) {
+        Set<String> nomesLote = new HashSet<>(lote.size() * 2);
+        List<Remedio> aceitos = new ArrayList<>(lote.size());
+        List<Remedio> conflitos = new ArrayList<>();
+        for (Remedio r : lote) {
+            String chave = chave(r.getNome());
+            boolean existente = !substituir && nomes.existe(r.getNome());
+            if (existente || !nomesLote.add(chave)) {
+                conflitos.add(r);
+            } else {
+                aceitos.add(r);
+            }
+        }
+        if (substituir) {
+            remedios.setAll(aceitos);
+        } else {
+            remedios.addAll(aceitos);
+        }
+        return conflitos;
+    }
+
+    // Todos os removidos são desligados antes de os adicionados serem ligados, para que
+    // um remédio que sai e volta na mesma alteração (setAll, por exemplo) continue ligado
+    private void aoAlterarLista(ListChangeListener.Change<? extends Remedio> c) {
+        while (c.next()) {
+            for (Remedio r : c.getRemoved()) {
+                r.setAlteracoes(null);
+                nomes.retirar(r.getNome());
+            }
+        }
+        c.reset();
+        while (c.next()) {
+            for (Remedio r : c.getAddedSubList()) {
+                r.setAlteracoes(alteracoes);
+                nomes.incluir(r.getNome());
+                if (r.getOrdem() == 0) {
+                    r.atribuirOrdem(++maiorOrdem);
+                } else {
+                    maiorOrdem = Math.max(maiorOrdem, r.getOrdem());
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package org.example;
+
+import javafx.beans.property.ReadOnlyIntegerProperty;
+import javafx.beans.property.ReadOnlyIntegerWrapper;
+import javafx.collections.FXCollections;
+import javafx.collections.ListChangeListener;
+import javafx.collections.ObservableList;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Contadores de remédios tomados/pendentes e a lista dos já tomados,
+ * atualizados a cada marcação em vez de recalculados percorrendo a lista.
+ *
+ * Os tomados aparecem na ordem em que foram marcados. Num lote de
+ * alterações, as marcações são acumuladas e a lista de tomados muda uma
+ * única vez, no fim.
+ */
+public class ResumoTomados {
+
+    private final ReadOnlyIntegerWrapper total = new ReadOnlyIntegerWrapper();
+    private final ReadOnlyIntegerWrapper tomados = new ReadOnlyIntegerWrapper();
+    private final ObservableList<Remedio> listaTomados = FXCollections.observableArrayList();
+    private final ObservableList<Remedio> listaTomadosSomenteLeitura =
+            FXCollections.unmodifiableObservableList(listaTomados);
+    // Remédios marcados ou desmarcados no lote em andamento, com o estado que os contadores ainda refletem
+    private final Map<Remedio, Boolean> pendentesLote = new LinkedHashMap<>();
+
+    public ResumoTomados(RepositorioRemedios repositorio) {
+        incluir(repositorio.getRemedios());
+        repositorio.getRemedios().addListener(this::aoAlterarLista);
+        AlteracoesRemedios alteracoes = repositorio.getAlteracoes();
+        alteracoes.adicionar(new AlteracoesRemedios.Ouvinte() {
+            @Override
+            public void alterado(Remedio r, Remedio.Campo campo, Object antes) {
+                if (campo != Remedio.Campo.TOMADO) {
+                    return;
+                }
+                if (alteracoes.isEmLote()) {
+                    pendentesLote.putIfAbsent(r, (Boolean) antes);
+                } else {
+                    aoAlterarTomado(r);
+                }
+            }
+
+            @Override
+            public void loteConcluido() {
+                concluirLote();
+            }
+        });
+    }
+
+    public ReadOnlyIntegerProperty totalProperty() { return total.getReadOnlyProperty(); }
+    public ReadOnlyIntegerProperty tomadosProperty() { return tomados.getReadOnlyProperty(); }
+
+    public int getTotal() { return total.get(); }
+    public int getTomados() { return tomados.get(); }
+    public int getPendentes() { return total.get() - tomados.get(); }
+
+    /** Percentual de tomados, 0 numa lista vazia; o mesmo na janela e no processamento em lote. */
+    public static double taxaConclusao(long total, long tomados) {
+        return total > 0 ? tomados * 100.0 / total : 0;
+    }
+
+    public boolean todosTomados() {
+        return total.get() > 0 && tomados.get() == total.get();
+    }
+
+    public ObservableList<Remedio> getListaTomados() {
+        return listaTomadosSomenteLeitura;
+    }
+
+    private void aoAlterarLista(ListChangeListener.Change<? extends Remedio> c) {
+        while (c.next()) {
+            if (c.wasPermutated()) {
+                continue;
+            }
+            if (c.wasRemoved()) {
+                Set<Remedio> saindo = Collections.newSetFromMap(new IdentityHashMap<>());
+                for (Remedio r : c.getRemoved()) {
+                    // Marcado no lote em andamento: os contadores ainda têm o estado anterior
+                    Boolean contado = pendentesLote.remove(r);
+                    if (contado != null ? contado : r.isTomado()) {
+                        saindo.add(r);
+                    }
+                }
+                total.set(total.get() - c.getRemovedSize());
+                tomados.set(tomados.get() - saindo.size());
+                // Uma única passada pelos tomados, mesmo quando sai um lote grande
+                if (saindo.size() == 1) {
+                    listaTomados.remove(saindo.iterator().next());
+                } else if (!saindo.isEmpty()) {
+                    listaTomados.removeIf(saindo::contains);
+                }
+            }
+            if (c.wasAdded()) {
+                incluir(c.getAddedSubList());
+            }
+        }
+    }
+
+    private void incluir(List<? extends Remedio> novos) {
+        List<Remedio> novosTomados = new ArrayList<>();
+        for (Remedio r : novos) {
+            if (r.isTomado()) {
+                novosTomados.add(r);
+            }
+        }
+        total.set(total.get() + novos.size());
+        tomados.set(tomados.get() + novosTomados.size());
+        listaTomados.addAll(novosTomados);
+    }
+
+    private void concluirLote() {
+        List<Remedio> marcados = new ArrayList<>();
+        Set<Remedio> desmarcados = Collections.newSetFromMap(new IdentityHashMap<>());
+        pendentesLote.forEach((r, antes) -> {
+            if (r.isTomado() && !antes) {
+                marcados.add(r);
+            } else if (!r.isTomado() && antes) {
+                desmarcados.add(r);
+            }
+        });
+        pendentesLote.clear();
+        tomados.set(tomados.get() + marcados.size() - desmarcados.size());
+        if (!desmarcados.isEmpty()) {
+            listaTomados.removeAll(desmarcados);
+        }
+        listaTomados.addAll(marcados);
+    }
+
+    private void aoAlterarTomado(Remedio r) {
+        if (r.isTomado()) {
+            tomados.set(tomados.get() + 1);
+            listaTomados.add(r);
+        } else {
+            tomados.set(tomados.get() - 1);
+            // O desmarcado costuma ser um dos últimos marcados
+            int i = listaTomados.lastIndexOf(r);
+            if (i >= 0) {
+                listaTomados.remove(i);
+            }
+        }
+    }
+}
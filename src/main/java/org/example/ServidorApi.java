@@ -0,0 +1,280 @@
+package org.example;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import javafx.collections.ListChangeListener;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.*;
+
+/**
+ * API HTTP/JSON local, para registrar doses de outros aparelhos da rede.
+ *
+ * <pre>
+ * GET  /api/pacientes
+ * GET  /api/pacientes/{id}/remedios
+ * GET  /api/pacientes/{id}/remedios/{idRemedio}
+ * POST /api/pacientes/{id}/remedios/{idRemedio}/tomado     {"tomado": true|false}
+ * GET  /api/pacientes/{id}/estatisticas
+ * </pre>
+ *
+ * As requisições são atendidas por um grupo próprio de threads e leem a
+ * {@link RemediosConcorrentes} de cada paciente sem passar pela thread do
+ * JavaFX. Só abrir um paciente ainda não carregado e aplicar uma marcação
+ * vão para a thread da lista, e quem espera é a thread da requisição.
+ *
+ * Toda requisição precisa do cabeçalho {@code Authorization: Bearer <token>},
+ * com o token combinado na criação do servidor; sem ele a resposta é 401.
+ */
+public class ServidorApi {
+
+    private static final long ESPERA_SEGUNDOS = 10;
+
+    /** Abre (carregando, se preciso) o núcleo do paciente; chamado na thread da lista. */
+    public interface AbridorPacientes {
+        /**
+         * @return o núcleo, completado na thread da lista quando estiver carregado,
+         *         ou com {@code null} se ele está sendo carregado pela janela
+         */
+        CompletableFuture<NucleoRemedios> abrir(Pacientes.Paciente paciente);
+    }
+
+    // Taxas sem doses previstas vão como null, já que JSON não tem NaN
+    private record Estatisticas(int total, int tomados, int pendentes, int dosesHoje, double dosesPrevistasPorDia,
+                                Double adesaoDia, Double adesao7Dias, Double adesao30Dias, int atrasadas30Dias,
+                                List<EstatisticasAdesao.SequenciaRemedio> sequencias) {
+        static Estatisticas de(RemediosConcorrentes visao) {
+            EstatisticasAdesao.Resumo r = visao.resumoAdesao();
+            int total = visao.getTotal();
+            int tomados = visao.getTomados();
+            return new Estatisticas(total, tomados, total - tomados, r.tomadasHoje(), r.esperadasPorDia(),
+                    taxa(r.taxaDia()), taxa(r.taxaSemana()), taxa(r.taxaMes()), r.atrasadasMes(),
+                    r.melhoresSequencias());
+        }
+
+        private static Double taxa(double t) {
+            return Double.isNaN(t) ? null : t;
+        }
+    }
+
+    // Resposta de erro já com o status; vira {"erro": mensagem}
+    private static class ErroApi extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        final int status;
+
+        ErroApi(int status, String mensagem) {
+            super(mensagem);
+            this.status = status;
+        }
+    }
+
+    private final HttpServer servidor;
+    private final ExecutorService threads;
+    private final Executor threadDaLista;
+    private final AbridorPacientes abridor;
+    private final byte[] autorizacao;
+    private final Gson gson = new Gson();
+    private final Map<String, RemediosConcorrentes> abertos = new ConcurrentHashMap<>();
+    private volatile List<Pacientes.Paciente> pacientes;
+
+    /**
+     * Deve ser criado na thread da lista.
+     *
+     * @param endereco onde escutar; só aceita conexões de outros aparelhos se não for o loopback
+     * @param token exigido em cada requisição; não pode ser vazio
+     */
+    public ServidorApi(InetSocketAddress endereco, String token, Pacientes listaPacientes, Executor threadDaLista,
+                       AbridorPacientes abridor) throws IOException {
+        if (token == null || token.isBlank()) {
+            throw new IllegalArgumentException("token da API não informado");
+        }
+        this.autorizacao = ("Bearer " + token).getBytes(StandardCharsets.UTF_8);
+        this.threadDaLista = threadDaLista;
+        this.abridor = abridor;
+        this.pacientes = List.copyOf(listaPacientes.getLista());
+        listaPacientes.getLista().addListener((ListChangeListener<Pacientes.Paciente>) c ->
+                pacientes = List.copyOf(listaPacientes.getLista()));
+        this.threads = Executors.newFixedThreadPool(16, r -> {
+            Thread t = new Thread(r, "api-http");
+            t.setDaemon(true);
+            return t;
+        });
+        this.servidor = HttpServer.create(endereco, 0);
+        servidor.setExecutor(threads);
+        servidor.createContext("/api/", this::atender);
+    }
+
+    public void iniciar() {
+        servidor.start();
+    }
+
+    public int getPorta() {
+        return servidor.getAddress().getPort();
+    }
+
+    public void parar() {
+        servidor.stop(0);
+        threads.shutdownNow();
+    }
+
+    private void atender(HttpExchange troca) throws IOException {
+        try (troca) {
+            Object resposta;
+            int status = 200;
+            try {
+                if (!autorizado(troca)) {
+                    troca.getResponseHeaders().set("WWW-Authenticate", "Bearer");
+                    throw new ErroApi(401, "token ausente ou inválido");
+                }
+                resposta = rotear(troca.getRequestMethod(), troca.getRequestURI().getPath().split("/"), troca);
+            } catch (ErroApi ex) {
+                status = ex.status;
+                resposta = Map.of("erro", ex.getMessage());
+            } catch (RuntimeException ex) {
+                status = 500;
+                resposta = Map.of("erro", String.valueOf(ex.getMessage()));
+            }
+            byte[] corpo = gson.toJson(resposta).getBytes(StandardCharsets.UTF_8);
+            troca.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+            troca.sendResponseHeaders(status, corpo.length);
+            try (OutputStream saida = troca.getResponseBody()) {
+                saida.write(corpo);
+            }
+        }
+    }
+
+    // Comparação em tempo constante, para não revelar o token aos poucos
+    private boolean autorizado(HttpExchange troca) {
+        String cabecalho = troca.getRequestHeaders().getFirst("Authorization");
+        return cabecalho != null
+                && MessageDigest.isEqual(autorizacao, cabecalho.getBytes(StandardCharsets.UTF_8));
+    }
+
+    // partes: "", "api", "pacientes", {id}, "remedios", {idRemedio}, "tomado"
+    private Object rotear(String metodo, String[] partes, HttpExchange troca) throws ErroApi {
+        if (partes.length < 3 || !partes[2].equals("pacientes")) {
+            throw new ErroApi(404, "caminho desconhecido");
+        }
+        if (partes.length == 3) {
+            exigir(metodo, "GET");
+            return pacientes;
+        }
+        RemediosConcorrentes visao = visao(partes[3]);
+        if (partes.length == 5 && partes[4].equals("remedios")) {
+            exigir(metodo, "GET");
+            return esperar(visao.listar());
+        }
+        if (partes.length == 5 && partes[4].equals("estatisticas")) {
+            exigir(metodo, "GET");
+            return Estatisticas.de(visao);
+        }
+        if (partes.length >= 6 && partes[4].equals("remedios")) {
+            long id = idRemedio(partes[5]);
+            if (partes.length == 6) {
+                exigir(metodo, "GET");
+                RemediosConcorrentes.Registro r = visao.buscar(id);
+                if (r == null) {
+                    throw new ErroApi(404, "remédio não encontrado: " + id);
+                }
+                return r;
+            }
+            if (partes.length == 7 && partes[6].equals("tomado")) {
+                exigir(metodo, "POST");
+                return esperar(visao.marcarTomado(id, lerTomado(troca)));
+            }
+        }
+        throw new ErroApi(404, "caminho desconhecido");
+    }
+
+    // A visão do paciente, pedida à thread da lista se ainda não estiver aberta; a carga em si
+    // corre em segundo plano, e quem espera por ela é a thread da requisição
+    private RemediosConcorrentes visao(String idPaciente) throws ErroApi {
+        RemediosConcorrentes visao = abertos.get(idPaciente);
+        if (visao != null && visao.isAberto()) {
+            return visao;
+        }
+        Pacientes.Paciente paciente = pacientes.stream()
+                .filter(p -> p.id().equals(idPaciente))
+                .findFirst()
+                .orElseThrow(() -> new ErroApi(404, "paciente não encontrado: " + idPaciente));
+        CompletableFuture<RemediosConcorrentes> aberta = new CompletableFuture<>();
+        threadDaLista.execute(() -> {
+            try {
+                abridor.abrir(paciente).whenComplete((nucleo, ex) -> {
+                    if (ex != null) {
+                        aberta.completeExceptionally(ex);
+                    } else {
+                        aberta.complete(nucleo == null ? null : nucleo.compartilhar(threadDaLista));
+                    }
+                });
+            } catch (RuntimeException ex) {
+                aberta.completeExceptionally(ex);
+            }
+        });
+        visao = esperar(aberta);
+        if (visao == null) {
+            throw new ErroApi(503, "paciente sendo carregado, tente novamente");
+        }
+        abertos.put(idPaciente, visao);
+        return visao;
+    }
+
+    private <T> T esperar(CompletableFuture<T> resultado) throws ErroApi {
+        try {
+            return resultado.get(ESPERA_SEGUNDOS, TimeUnit.SECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new ErroApi(503, "requisição interrompida");
+        } catch (TimeoutException ex) {
+            throw new ErroApi(503, "aplicativo ocupado, tente novamente");
+        } catch (ExecutionException ex) {
+            Throwable causa = ex.getCause();
+            if (causa instanceof NoSuchElementException) {
+                throw new ErroApi(404, causa.getMessage());
+            }
+            if (causa instanceof IllegalStateException) {
+                throw new ErroApi(409, causa.getMessage());
+            }
+            throw new ErroApi(500, String.valueOf(causa.getMessage()));
+        }
+    }
+
+    private static void exigir(String metodo, String esperado) throws ErroApi {
+        if (!metodo.equals(esperado)) {
+            throw new ErroApi(405, "use " + esperado);
+        }
+    }
+
+    private static long idRemedio(String texto) throws ErroApi {
+        try {
+            return Long.parseLong(texto);
+        } catch (NumberFormatException ex) {
+            throw new ErroApi(400, "id de remédio inválido: " + texto);
+        }
+    }
+
+    private static boolean lerTomado(HttpExchange troca) throws ErroApi {
+        try (InputStreamReader corpo = new InputStreamReader(troca.getRequestBody(), StandardCharsets.UTF_8)) {
+            JsonObject json = JsonParser.parseReader(corpo).getAsJsonObject();
+            if (!json.has("tomado")) {
+                throw new ErroApi(400, "campo \"tomado\" obrigatório");
+            }
+            return json.get("tomado").getAsBoolean();
+        } catch (IOException | JsonParseException | IllegalStateException | UnsupportedOperationException ex) {
+            throw new ErroApi(400, "corpo inválido, esperado {\"tomado\": true|false}");
+        }
+    }
+}
@@ -0,0 +1,267 @@
+package org.example;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.zip.CRC32C;
+
+/**
+ * Formato binário do snapshot da lista de remédios, mais compacto e rápido
+ * de ler que o JSON (que continua sendo usado para exportar e importar).
+ *
+ * Dosagens e frequências se repetem muito, então vão para um dicionário no
+ * início do arquivo e cada remédio guarda só o índice. Cada registro começa
+ * com o próprio comprimento, para que versões futuras possam acrescentar
+ * campos no fim sem quebrar a leitura. Inteiros são gravados como varint e
+ * o corpo inteiro é conferido por um CRC32C antes de qualquer remédio ser entregue.
+ *
+ * <pre>
+ * cabeçalho: int MAGICO, short VERSAO, short reservado, long geracao,
+ *            int quantidade, int crc, long tamanhoCorpo
+ * corpo:     varint n, n × texto                       (dicionário)
+ *            quantidade × (varint comprimento, registro)
+ * registro:  varlong id, byte flags, varint dosagem, varint frequencia,
+ *            texto nome, texto observacoes, texto dataHoraTomado, double ordem
+ * texto:     varint (bytes UTF-8 + 1, 0 = nulo), bytes
+ * </pre>
+ * Os índices do dicionário também somam 1, com 0 para nulo. A ordem veio
+ * depois, no fim do registro; sem ela o remédio fica sem posição (0).
+ */
+public class SnapshotBinario {
+
+    private static final int MAGICO = 0x524D4442; // "RMDB"
+    private static final short VERSAO = 1;
+    private static final int TAMANHO_CABECALHO = 32;
+    private static final int TOMADO = 1;
+
+    /** Dados do cabeçalho, lidos sem carregar o resto do arquivo. */
+    public record Cabecalho(long geracao, int quantidade) { }
+
+    private SnapshotBinario() {
+    }
+
+    /** Cabeçalho do arquivo, ou {@code null} se ele não existe ou não está neste formato. */
+    public static Cabecalho lerCabecalho(Path arquivo) throws IOException {
+        if (!Files.exists(arquivo) || Files.size(arquivo) < TAMANHO_CABECALHO) {
+            return null;
+        }
+        try (FileChannel canal = FileChannel.open(arquivo, StandardOpenOption.READ)) {
+            ByteBuffer cabecalho = lerCompleto(canal, TAMANHO_CABECALHO);
+            if (cabecalho.getInt(0) != MAGICO) {
+                return null;
+            }
+            return new Cabecalho(cabecalho.getLong(8), cabecalho.getInt(16));
+        }
+    }
+
+    /** Lê o snapshot inteiro, entregando os remédios em ordem; devolve a geração. */
+    public static long ler(Path arquivo, Consumer<Remedio> destino) throws IOException {
+        ByteBuffer corpo;
+        long geracao;
+        int quantidade;
+        try (FileChannel canal = FileChannel.open(arquivo, StandardOpenOption.READ)) {
+            ByteBuffer cabecalho = lerCompleto(canal, TAMANHO_CABECALHO);
+            if (cabecalho.getInt(0) != MAGICO) {
+                throw new IOException("não é um snapshot binário: " + arquivo);
+            }
+            if (cabecalho.getShort(4) > VERSAO) {
+                throw new IOException("snapshot gravado por uma versão mais nova do programa: " + arquivo);
+            }
+            geracao = cabecalho.getLong(8);
+            quantidade = cabecalho.getInt(16);
+            long tamanho = cabecalho.getLong(24);
+            if (tamanho != canal.size() - TAMANHO_CABECALHO || tamanho > Integer.MAX_VALUE) {
+                throw new IOException("snapshot truncado: " + arquivo);
+            }
+            corpo = lerCompleto(canal, (int) tamanho);
+            CRC32C crc = new CRC32C();
+            crc.update(corpo.array(), 0, corpo.limit());
+            if ((int) crc.getValue() != cabecalho.getInt(20)) {
+                throw new IOException("snapshot corrompido (checksum não confere): " + arquivo);
+            }
+        }
+
+        try {
+            String[] dicionario = new String[lerVarint(corpo)];
+            for (int i = 0; i < dicionario.length; i++) {
+                dicionario[i] = lerTexto(corpo);
+            }
+            for (int i = 0; i < quantidade; i++) {
+                int comprimento = lerVarint(corpo);
+                int fim = corpo.position() + comprimento;
+                long id = lerVarlong(corpo);
+                int flags = corpo.get();
+                String dosagem = doDicionario(dicionario, lerVarint(corpo));
+                String frequencia = doDicionario(dicionario, lerVarint(corpo));
+                String nome = lerTexto(corpo);
+                String observacoes = lerTexto(corpo);
+                String dataHoraTomado = lerTexto(corpo);
+                double ordem = corpo.position() < fim ? corpo.getDouble() : 0;
+                // Campos acrescentados por versões futuras são ignorados
+                corpo.position(fim);
+
+                Remedio r = new Remedio(id, nome, observacoes, dosagem, frequencia);
+                r.setTomado((flags & TOMADO) != 0);
+                r.setDataHoraTomado(dataHoraTomado == null ? "" : dataHoraTomado);
+                r.atribuirOrdem(ordem);
+                destino.accept(r);
+            }
+        } catch (BufferUnderflowException | IllegalArgumentException
+                 | IllegalStateException | IndexOutOfBoundsException ex) {
+            throw new IOException("snapshot corrompido: " + arquivo, ex);
+        }
+        return geracao;
+    }
+
+    /** Grava o snapshot no arquivo informado (substituindo-o) e força a gravação em disco. */
+    public static void gravar(Path arquivo, long geracao, List<Remedio> remedios) throws IOException {
+        Map<String, Integer> indices = new HashMap<>();
+        List<String> dicionario = new ArrayList<>();
+        for (Remedio r : remedios) {
+            for (String valor : new String[]{r.getDosagem(), r.getFrequencia()}) {
+                if (valor != null && !indices.containsKey(valor)) {
+                    indices.put(valor, dicionario.size());
+                    dicionario.add(valor);
+                }
+            }
+        }
+
+        Saida corpo = new Saida(64 + remedios.size() * 48);
+        corpo.varint(dicionario.size());
+        dicionario.forEach(corpo::texto);
+        Saida registro = new Saida(256);
+        for (Remedio r : remedios) {
+            registro.tamanho = 0;
+            registro.varint(r.getId());
+            registro.dados[registro.reservar(1)] = (byte) (r.isTomado() ? TOMADO : 0);
+            registro.varint(r.getDosagem() == null ? 0 : indices.get(r.getDosagem()) + 1);
+            registro.varint(r.getFrequencia() == null ? 0 : indices.get(r.getFrequencia()) + 1);
+            registro.texto(r.getNome());
+            registro.texto(r.getObservacoes());
+            registro.texto(r.getDataHoraTomado());
+            registro.longo(Double.doubleToRawLongBits(r.getOrdem()));
+            corpo.varint(registro.tamanho);
+            corpo.bytes(registro.dados, registro.tamanho);
+        }
+
+        CRC32C crc = new CRC32C();
+        crc.update(corpo.dados, 0, corpo.tamanho);
+        ByteBuffer cabecalho = ByteBuffer.allocate(TAMANHO_CABECALHO);
+        cabecalho.putInt(MAGICO).putShort(VERSAO).putShort((short) 0)
+                .putLong(geracao).putInt(remedios.size()).putInt((int) crc.getValue())
+                .putLong(corpo.tamanho).flip();
+
+        try (FileChannel canal = FileChannel.open(arquivo, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer[] partes = {cabecalho, ByteBuffer.wrap(corpo.dados, 0, corpo.tamanho)};
+            while (partes[1].hasRemaining()) {
+                canal.write(partes);
+            }
+            canal.force(false);
+        }
+    }
+
+    // ---- Leitura ----
+
+    private static ByteBuffer lerCompleto(FileChannel canal, int tamanho) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(tamanho);
+        while (buffer.hasRemaining()) {
+            if (canal.read(buffer) < 0) {
+                throw new IOException("fim de arquivo inesperado");
+            }
+        }
+        return buffer.flip();
+    }
+
+    private static String doDicionario(String[] dicionario, int indice) {
+        return indice == 0 ? null : dicionario[indice - 1];
+    }
+
+    private static String lerTexto(ByteBuffer in) {
+        int n = lerVarint(in);
+        if (n == 0) {
+            return null;
+        }
+        int inicio = in.position();
+        in.position(inicio + n - 1);
+        return new String(in.array(), inicio, n - 1, StandardCharsets.UTF_8);
+    }
+
+    private static int lerVarint(ByteBuffer in) {
+        long v = lerVarlong(in);
+        if (v > Integer.MAX_VALUE) {
+            throw new IllegalStateException("varint fora do intervalo");
+        }
+        return (int) v;
+    }
+
+    private static long lerVarlong(ByteBuffer in) {
+        long v = 0;
+        for (int desloc = 0; desloc < 64; desloc += 7) {
+            byte b = in.get();
+            v |= (long) (b & 0x7F) << desloc;
+            if (b >= 0) {
+                return v;
+            }
+        }
+        throw new IllegalStateException("varint longo demais");
+    }
+
+    // ---- Escrita ----
+
+    private static class Saida {
+        byte[] dados;
+        int tamanho;
+
+        Saida(int capacidade) {
+            dados = new byte[capacidade];
+        }
+
+        int reservar(int n) {
+            if (tamanho + n > dados.length) {
+                dados = Arrays.copyOf(dados, Math.max(dados.length * 2, tamanho + n));
+            }
+            int pos = tamanho;
+            tamanho += n;
+            return pos;
+        }
+
+        void varint(long v) {
+            while ((v & ~0x7FL) != 0) {
+                dados[reservar(1)] = (byte) ((v & 0x7F) | 0x80);
+                v >>>= 7;
+            }
+            dados[reservar(1)] = (byte) v;
+        }
+
+        // Big-endian, como o ByteBuffer da leitura
+        void longo(long v) {
+            int pos = reservar(8);
+            for (int i = 7; i >= 0; i--) {
+                dados[pos + i] = (byte) v;
+                v >>>= 8;
+            }
+        }
+
+        void bytes(byte[] origem, int n) {
+            System.arraycopy(origem, 0, dados, reservar(n), n);
+        }
+
+        void texto(String s) {
+            if (s == null) {
+                varint(0);
+                return;
+            }
+            byte[] b = s.getBytes(StandardCharsets.UTF_8);
+            varint(b.length + 1);
+            bytes(b, b.length);
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package org.example;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.function.LongConsumer;
+
+/**
+ * Uma versão dos dados em disco resumida num hash do conteúdo de cada
+ * remédio, por id. É a base da comparação com uma versão alterada por fora:
+ * um remédio cujo hash difere da base foi alterado daquele lado.
+ *
+ * Tabela de endereçamento aberto em dois vetores de long (16 bytes por
+ * remédio, com metade das posições livres), para caber junto de listas grandes.
+ * Depois de montada, não muda e pode ser lida de qualquer thread.
+ */
+public final class VersaoArquivo {
+
+    private long[] ids;
+    // 0 marca posição livre; um hash calculado nunca é 0
+    private long[] hashes;
+    private int tamanho;
+
+    private VersaoArquivo(int capacidade) {
+        int n = Integer.highestOneBit(Math.max(16, capacidade * 2 - 1)) << 1;
+        ids = new long[n];
+        hashes = new long[n];
+    }
+
+    public static VersaoArquivo de(List<Remedio> remedios) {
+        VersaoArquivo v = new VersaoArquivo(remedios.size());
+        for (Remedio r : remedios) {
+            v.incluir(r.getId(), hash(r));
+        }
+        return v;
+    }
+
+    /** Lê o snapshot em fluxo, sem manter os remédios; vazia se o arquivo não existe. */
+    public static VersaoArquivo ler(Path snapshot) throws IOException {
+        VersaoArquivo v = new VersaoArquivo(16);
+        DiarioRemedios.lerSnapshot(snapshot, r -> v.incluir(r.getId(), hash(r)));
+        return v;
+    }
+
+    public int getTamanho() {
+        return tamanho;
+    }
+
+    /** Hash do remédio nesta versão, ou 0 se ele não existe nela. */
+    public long hash(long id) {
+        int mascara = ids.length - 1;
+        for (int i = posicao(id, mascara); hashes[i] != 0; i = (i + 1) & mascara) {
+            if (ids[i] == id) {
+                return hashes[i];
+            }
+        }
+        return 0;
+    }
+
+    public void paraCadaId(LongConsumer acao) {
+        for (int i = 0; i < ids.length; i++) {
+            if (hashes[i] != 0) {
+                acao.accept(ids[i]);
+            }
+        }
+    }
+
+    /** Hash de 64 bits dos campos gravados do remédio; nunca é 0. */
+    public static long hash(Remedio r) {
+        long h = misturar(r.getId());
+        h = misturar(h ^ texto(r.getNome()));
+        h = misturar(h ^ texto(r.getObservacoes()));
+        h = misturar(h ^ texto(r.getDosagem()));
+        h = misturar(h ^ texto(r.getFrequencia()));
+        h = misturar(h ^ (r.isTomado() ? 1 : 2));
+        h = misturar(h ^ texto(r.getDataHoraTomado()));
+        h = misturar(h ^ Double.doubleToLongBits(r.getOrdem()));
+        return h == 0 ? 1 : h;
+    }
+
+    private void incluir(long id, long hash) {
+        if (tamanho * 2 >= ids.length) {
+            crescer();
+        }
+        int mascara = ids.length - 1;
+        int i = posicao(id, mascara);
+        while (hashes[i] != 0 && ids[i] != id) {
+            i = (i + 1) & mascara;
+        }
+        if (hashes[i] == 0) {
+            tamanho++;
+        }
+        ids[i] = id;
+        hashes[i] = hash;
+    }
+
+    private void crescer() {
+        long[] idsAntigos = ids;
+        long[] hashesAntigos = hashes;
+        ids = new long[idsAntigos.length * 2];
+        hashes = new long[idsAntigos.length * 2];
+        tamanho = 0;
+        for (int i = 0; i < idsAntigos.length; i++) {
+            if (hashesAntigos[i] != 0) {
+                incluir(idsAntigos[i], hashesAntigos[i]);
+            }
+        }
+    }
+
+    private static int posicao(long id, int mascara) {
+        return (int) misturar(id) & mascara;
+    }
+
+    // Nulo e vazio têm hashes diferentes, como na gravação
+    private static long texto(String s) {
+        if (s == null) {
+            return 0x9E3779B97F4A7C15L;
+        }
+        long h = s.length();
+        for (int i = 0; i < s.length(); i++) {
+            h = h * 0x100000001B3L ^ s.charAt(i);
+        }
+        return h;
+    }
+
+    // Finalizador do SplitMix64
+    private static long misturar(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -0,0 +1,103 @@
+package org.example;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Acompanha, por um {@link WatchService}, arquivos de uma pasta que podem
+ * ser alterados por fora do programa.
+ *
+ * Quem grava um arquivo costuma gerar vários eventos seguidos (criação e
+ * uma modificação por bloco escrito), então o aviso só sai depois de
+ * {@value #PAUSA_MS} ms sem eventos, uma vez por arquivo alterado.
+ * O aviso roda na thread da vigia; cabe a quem o recebe distinguir as
+ * gravações do próprio programa.
+ */
+public class VigiaArquivos {
+
+    private static final long PAUSA_MS = 300;
+
+    private final Path pasta;
+    private final Set<Path> nomes;
+    private final Consumer<Path> aoAlterar;
+    private final WatchService servico;
+    private final Thread vigia;
+
+    /**
+     * @param arquivos arquivos acompanhados, todos na mesma pasta
+     * @param aoAlterar recebe o arquivo alterado, na thread da vigia
+     */
+    public VigiaArquivos(Set<Path> arquivos, Consumer<Path> aoAlterar) throws IOException {
+        this.pasta = arquivos.iterator().next().toAbsolutePath().getParent();
+        this.nomes = new LinkedHashSet<>();
+        for (Path arquivo : arquivos) {
+            nomes.add(arquivo.getFileName());
+        }
+        this.aoAlterar = aoAlterar;
+        this.servico = FileSystems.getDefault().newWatchService();
+        pasta.register(servico, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        this.vigia = new Thread(this::vigiar, "vigia-arquivos");
+        this.vigia.setDaemon(true);
+    }
+
+    public void iniciar() {
+        vigia.start();
+    }
+
+    /** Encerra a vigia e espera um aviso em andamento terminar. */
+    public void parar() {
+        try {
+            servico.close();
+        } catch (IOException ex) {
+            // Fechado de qualquer forma; a thread sai pela exceção de serviço fechado
+        }
+        vigia.interrupt();
+        if (Thread.currentThread() != vigia) {
+            try {
+                vigia.join(TimeUnit.SECONDS.toMillis(5));
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void vigiar() {
+        Set<Path> alterados = new LinkedHashSet<>();
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                WatchKey chave = alterados.isEmpty()
+                        ? servico.take()
+                        : servico.poll(PAUSA_MS, TimeUnit.MILLISECONDS);
+                if (chave == null) {
+                    // Pausa sem eventos: as gravações terminaram
+                    for (Path nome : alterados) {
+                        aoAlterar.accept(pasta.resolve(nome));
+                    }
+                    alterados.clear();
+                    continue;
+                }
+                for (WatchEvent<?> evento : chave.pollEvents()) {
+                    if (evento.kind() == StandardWatchEventKinds.OVERFLOW) {
+                        // Eventos perdidos: qualquer um pode ter mudado
+                        alterados.addAll(nomes);
+                    } else if (evento.context() instanceof Path nome && nomes.contains(nome)) {
+                        alterados.add(nome);
+                    }
+                }
+                chave.reset();
+            }
+        } catch (InterruptedException | ClosedWatchServiceException ex) {
+            // Encerrada por parar()
+        }
+    }
+}
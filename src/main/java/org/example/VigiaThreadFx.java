@@ -0,0 +1,93 @@
+package org.example;
+
+import java.time.LocalDateTime;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Detecta quando a thread do JavaFX fica bloqueada.
+ *
+ * A cada {@value #PERIODO_MS} ms uma thread própria envia um "batimento" para
+ * a thread do JavaFX e mede quanto ele demora a rodar; a demora entra no
+ * histograma de resposta. Se um batimento passa do limite sem rodar, a pilha
+ * da thread do JavaFX é capturada naquele momento, e quando ela volta a
+ * responder o travamento é registrado, com a duração total, no
+ * {@link Diagnostico} e no JFR.
+ */
+public class VigiaThreadFx {
+
+    private static final long PERIODO_MS = 100;
+    private static final int MAXIMO_QUADROS = 40;
+
+    private final Executor threadFx;
+    private final long limiteNanos;
+    private final Thread vigia;
+
+    // Escritos pela thread do JavaFX, lidos pela vigia
+    private volatile Thread alvo;
+    private volatile boolean pendente;
+    private volatile long enviadoEm;
+    // Pilha do travamento em andamento, capturada pela vigia
+    private volatile String pilha;
+
+    public VigiaThreadFx(Executor threadFx, long limiteMs) {
+        this.threadFx = threadFx;
+        this.limiteNanos = TimeUnit.MILLISECONDS.toNanos(limiteMs);
+        this.vigia = new Thread(this::vigiar, "vigia-thread-fx");
+        this.vigia.setDaemon(true);
+    }
+
+    public void iniciar() {
+        vigia.start();
+    }
+
+    public void parar() {
+        vigia.interrupt();
+    }
+
+    private void vigiar() {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                Thread.sleep(PERIODO_MS);
+                if (!pendente) {
+                    pendente = true;
+                    enviadoEm = System.nanoTime();
+                    threadFx.execute(this::batimento);
+                } else if (pilha == null && alvo != null && System.nanoTime() - enviadoEm > limiteNanos) {
+                    pilha = formatar(alvo.getStackTrace());
+                }
+            }
+        } catch (InterruptedException ex) {
+            // Encerrada junto com o aplicativo
+        }
+    }
+
+    // Roda na thread do JavaFX
+    private void batimento() {
+        alvo = Thread.currentThread();
+        long demora = System.nanoTime() - enviadoEm;
+        Diagnostico.histograma(Diagnostico.Operacao.RESPOSTA_FX).registrar(demora);
+        String capturada = pilha;
+        if (demora > limiteNanos && capturada != null) {
+            long ms = TimeUnit.NANOSECONDS.toMillis(demora);
+            Diagnostico.TravamentoFx evento = new Diagnostico.TravamentoFx();
+            evento.duracao = ms;
+            evento.pilha = capturada;
+            evento.commit();
+            Diagnostico.registrarTravamento(new Diagnostico.Travamento(LocalDateTime.now(), ms, capturada));
+        }
+        pilha = null;
+        pendente = false;
+    }
+
+    private static String formatar(StackTraceElement[] quadros) {
+        StringBuilder b = new StringBuilder();
+        for (int i = 0; i < quadros.length && i < MAXIMO_QUADROS; i++) {
+            b.append("    at ").append(quadros[i]).append('\n');
+        }
+        if (quadros.length > MAXIMO_QUADROS) {
+            b.append("    ... mais ").append(quadros.length - MAXIMO_QUADROS).append('\n');
+        }
+        return b.toString();
+    }
+}